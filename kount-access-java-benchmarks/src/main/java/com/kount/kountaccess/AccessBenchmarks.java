@@ -0,0 +1,30 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the SDK benchmarks with the GC profiler, so every result comes with its allocation rate per operation
+ * ({@code gc.alloc.rate.norm}). Takes the usual JMH command line options, e.g. a benchmark regex, {@code -f},
+ * {@code -wi} or {@code -rf json}.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class AccessBenchmarks {
+
+	private AccessBenchmarks() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+import org.openjdk.jmh.util.Statistics;
+
+/**
+ * Runs {@link SharedSdkBenchmark} with 1, 2, 4 ... threads and prints the throughput and latency of every call at
+ * every thread count. With enough cores the throughput per thread stays flat; where it drops, the profiler (e.g.
+ * {@code -prof stack} or async-profiler on the benchmark at that thread count) shows the contended code.
+ * <p>
+ * Arguments: the highest thread count (default 128) and, optionally, a CSV file for plotting.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class CoreScaling {
+
+	private CoreScaling() {
+	}
+
+	public static void main(String[] args) throws RunnerException, IOException {
+		int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : 128;
+		List<String> rows = new ArrayList<>();
+		rows.add("benchmark,threads,ops_per_s,ops_per_s_per_thread,p50_us,p99_us,p999_us");
+		System.out.println(rows.get(0));
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			Options options = new OptionsBuilder().include(SharedSdkBenchmark.class.getName()).threads(threads)
+					.mode(Mode.Throughput).mode(Mode.SampleTime).timeUnit(TimeUnit.MICROSECONDS)
+					.verbosity(VerboseMode.SILENT).build();
+			for (String row : toRows(threads, new Runner(options).run())) {
+				System.out.println(row);
+				rows.add(row);
+			}
+		}
+		if (args.length > 1) {
+			try (PrintWriter csv = new PrintWriter(new FileWriter(args[1]))) {
+				for (String row : rows) {
+					csv.println(row);
+				}
+			}
+		}
+	}
+
+	private static List<String> toRows(int threads, Collection<RunResult> results) {
+		List<String> rows = new ArrayList<>();
+		for (RunResult throughput : results) {
+			if (throughput.getParams().getMode() != Mode.Throughput) {
+				continue;
+			}
+			String benchmark = throughput.getParams().getBenchmark();
+			for (RunResult latency : results) {
+				if ((latency.getParams().getMode() == Mode.SampleTime)
+						&& latency.getParams().getBenchmark().equals(benchmark)) {
+					// throughput in ops/us
+					double opsPerSecond = throughput.getPrimaryResult().getScore() * 1e6;
+					Statistics sample = latency.getPrimaryResult().getStatistics();
+					rows.add(String.format("%s,%d,%.0f,%.0f,%.2f,%.2f,%.2f",
+							benchmark.substring(benchmark.lastIndexOf('.') + 1), threads, opsPerSecond,
+							opsPerSecond / threads, sample.getPercentile(50), sample.getPercentile(99),
+							sample.getPercentile(99.9)));
+				}
+			}
+		}
+		return rows;
+	}
+}
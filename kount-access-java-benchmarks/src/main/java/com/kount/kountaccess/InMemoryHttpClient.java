@@ -0,0 +1,106 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * HTTP client answering every endpoint from memory, so a benchmark measures the SDK alone: the request entity is
+ * written out as it would be to a socket, and the response is a canned JSON body. It holds no lock.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class InMemoryHttpClient extends CloseableHttpClient {
+
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	private final Map<String, byte[]> responses = new HashMap<>();
+
+	private final byte[] defaultResponse;
+
+	/**
+	 * @param defaultResponse
+	 *            response of the endpoints without a response of their own
+	 */
+	InMemoryHttpClient(String defaultResponse) {
+		this.defaultResponse = defaultResponse.getBytes(StandardCharsets.UTF_8);
+	}
+
+	InMemoryHttpClient respond(AccessEndpoint endpoint, String response) {
+		responses.put(endpoint.getPath(), response.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	@Override
+	protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+			throws IOException {
+		if (request instanceof HttpEntityEnclosingRequest) {
+			((HttpEntityEnclosingRequest) request).getEntity().writeTo(DISCARD);
+		}
+		String uri = request.getRequestLine().getUri();
+		int query = uri.indexOf('?');
+		String path = uri.substring(uri.indexOf('/', uri.indexOf("//") + 2), (query < 0) ? uri.length() : query);
+		byte[] body = responses.get(path);
+		InMemoryResponse response = new InMemoryResponse();
+		response.setEntity(new ByteArrayEntity((body != null) ? body : defaultResponse, ContentType.APPLICATION_JSON));
+		return response;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Deprecated in HttpClient, but still abstract in {@link CloseableHttpClient}. Never called by the SDK.
+	 */
+	@Deprecated
+	@Override
+	public org.apache.http.params.HttpParams getParams() {
+		return new org.apache.http.params.BasicHttpParams();
+	}
+
+	/**
+	 * Deprecated in HttpClient, but still abstract in {@link CloseableHttpClient}. Never called by the SDK.
+	 */
+	@Deprecated
+	@Override
+	public org.apache.http.conn.ClientConnectionManager getConnectionManager() {
+		throw new UnsupportedOperationException();
+	}
+
+	private static class InMemoryResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+		InMemoryResponse() {
+			super(HttpVersion.HTTP_1_1, 200, "OK");
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server latency added by the stub server to every response. Parsed from a specification in milliseconds:
+ * <ul>
+ * <li>{@code none}</li>
+ * <li>{@code fixed:<ms>}</li>
+ * <li>{@code uniform:<min ms>:<max ms>}</li>
+ * <li>{@code lognormal:<median ms>:<p99 ms>}, a long tail like the one of a real server</li>
+ * </ul>
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public abstract class LatencyDistribution {
+
+	/**
+	 * z-score of the 99th percentile of the standard normal distribution
+	 */
+	private static final double Z_99 = 2.326;
+
+	public static final LatencyDistribution NONE = new LatencyDistribution("none") {
+		@Override
+		public long nextNanos(Random random) {
+			return 0;
+		}
+	};
+
+	private final String spec;
+
+	private LatencyDistribution(String spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * @return the next latency, in nanoseconds.
+	 */
+	public abstract long nextNanos(Random random);
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the specification is invalid.
+	 */
+	public static LatencyDistribution parse(String spec) {
+		String[] parts = spec.split(":");
+		try {
+			switch (parts[0]) {
+			case "none":
+				if (parts.length == 1) {
+					return NONE;
+				}
+				break;
+			case "fixed":
+				if (parts.length == 2) {
+					return fixed(spec, millisToNanos(parts[1]));
+				}
+				break;
+			case "uniform":
+				if (parts.length == 3) {
+					return uniform(spec, millisToNanos(parts[1]), millisToNanos(parts[2]));
+				}
+				break;
+			case "lognormal":
+				if (parts.length == 3) {
+					return logNormal(spec, millisToNanos(parts[1]), millisToNanos(parts[2]));
+				}
+				break;
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid latency (" + spec + ")", e);
+		}
+		throw new IllegalArgumentException("Invalid latency (" + spec
+				+ ").  Must be none, fixed:<ms>, uniform:<min ms>:<max ms> or lognormal:<median ms>:<p99 ms>.");
+	}
+
+	private static LatencyDistribution fixed(String spec, final long nanos) {
+		return new LatencyDistribution(spec) {
+			@Override
+			public long nextNanos(Random random) {
+				return nanos;
+			}
+		};
+	}
+
+	private static LatencyDistribution uniform(String spec, final long minNanos, final long maxNanos) {
+		if (maxNanos < minNanos) {
+			throw new IllegalArgumentException("Invalid latency (" + spec + ").  Max is lower than min.");
+		}
+		return new LatencyDistribution(spec) {
+			@Override
+			public long nextNanos(Random random) {
+				return minNanos + (long) (random.nextDouble() * (maxNanos - minNanos));
+			}
+		};
+	}
+
+	private static LatencyDistribution logNormal(String spec, long medianNanos, long p99Nanos) {
+		if ((medianNanos <= 0) || (p99Nanos < medianNanos)) {
+			throw new IllegalArgumentException(
+					"Invalid latency (" + spec + ").  Median must be positive and p99 not lower than the median.");
+		}
+		final double mu = Math.log(medianNanos);
+		final double sigma = Math.log((double) p99Nanos / medianNanos) / Z_99;
+		return new LatencyDistribution(spec) {
+			@Override
+			public long nextNanos(Random random) {
+				return (long) Math.exp(mu + (sigma * random.nextGaussian()));
+			}
+		};
+	}
+
+	private static long millisToNanos(String millis) {
+		double value = Double.parseDouble(millis);
+		if (value < 0) {
+			throw new NumberFormatException("negative latency");
+		}
+		return (long) (value * TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	@Override
+	public String toString() {
+		return spec;
+	}
+}
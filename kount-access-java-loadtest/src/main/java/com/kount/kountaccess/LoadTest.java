@@ -0,0 +1,377 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Drives an {@link AccessSdk} from a number of threads against the {@link StubAccessServer} (or another server) and
+ * reports the throughput and the latency percentiles of every endpoint, as seen by the callers of the SDK.
+ * <p>
+ * In the async mode, each thread keeps its share of the async clients in flight through the SDK executor instead of
+ * making one call at a time: it prefetches the info of new sessions with
+ * {@link AccessSdk#prefetch(String, InfoEndpointDataSet)}, and completes the oldest one with
+ * {@link AccessSdk#getDevice(String)}, which joins its prefetch. The latency of a client is from its prefetch to the
+ * completion, reported for the info endpoint only.
+ * <p>
+ * Options ({@code --name value}):
+ * <ul>
+ * <li>{@code threads}: number of calling threads (default 16), also the size of the connection pool</li>
+ * <li>{@code async}: number of async clients in flight (default 0, one call at a time per thread), also the size of
+ * the connection pool if set</li>
+ * <li>{@code duration}: measured seconds (default 30)</li>
+ * <li>{@code warmup}: seconds run before the measurement (default 5)</li>
+ * <li>{@code endpoints}: comma separated endpoint names (default all of them), called in turn by every thread;
+ * ignored in the async mode</li>
+ * <li>{@code latency}: latency of the stub server, see {@link LatencyDistribution} (default lognormal:2:20)</li>
+ * <li>{@code payload}: minimum size of the stub server responses in bytes (default 0)</li>
+ * <li>{@code host}: host of a server already running instead of the embedded stub server</li>
+ * </ul>
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class LoadTest {
+
+	private static final int MERCHANT_ID = 999999;
+
+	private static final String API_KEY = "load-test-api-key";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final AccessSdk sdk;
+
+	private final AccessEndpoint[] endpoints;
+
+	private final int threads;
+
+	/**
+	 * Async clients in flight per thread, 0 for one call at a time
+	 */
+	private final int window;
+
+	private final Map<AccessEndpoint, LatencyHistogram> latencies = new EnumMap<>(AccessEndpoint.class);
+
+	private final LatencyHistogram total = new LatencyHistogram();
+
+	private final AtomicLongArray errors = new AtomicLongArray(AccessEndpoint.values().length);
+
+	private final int infoFlag = new InfoEndpointDataSet().withInfo().withVelocity().withDecision()
+			.withTrustedDevice().withBehavioSec().build();
+
+	private volatile long measureStart;
+
+	private volatile long measureEnd;
+
+	/**
+	 * @param sdk
+	 *            the SDK under test
+	 * @param endpoints
+	 *            the endpoints to call, in turn
+	 * @param threads
+	 *            number of calling threads
+	 */
+	public LoadTest(AccessSdk sdk, AccessEndpoint[] endpoints, int threads) {
+		this(sdk, endpoints, threads, 0);
+	}
+
+	/**
+	 * @param sdk
+	 *            the SDK under test
+	 * @param endpoints
+	 *            the endpoints to call, in turn, ignored in the async mode
+	 * @param threads
+	 *            number of calling threads
+	 * @param asyncClients
+	 *            number of async clients in flight, shared by the threads; 0 for one call at a time per thread
+	 */
+	public LoadTest(AccessSdk sdk, AccessEndpoint[] endpoints, int threads, int asyncClients) {
+		this.sdk = sdk;
+		this.endpoints = (asyncClients > 0) ? new AccessEndpoint[] { AccessEndpoint.INFO } : endpoints.clone();
+		this.threads = threads;
+		this.window = (asyncClients > 0) ? Math.max(1, asyncClients / threads) : 0;
+		for (AccessEndpoint endpoint : this.endpoints) {
+			latencies.put(endpoint, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * Runs the calling threads for the warm-up and the measured time.
+	 */
+	public void run(long warmupMillis, long durationMillis) throws InterruptedException {
+		long now = System.nanoTime();
+		measureStart = now + TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+		measureEnd = measureStart + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		final CountDownLatch done = new CountDownLatch(threads);
+		List<Thread> workers = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			final int offset = i;
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (window > 0) {
+							prefetchUntilEnd();
+						} else {
+							callUntilEnd(offset);
+						}
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "load-test-" + i);
+			worker.setDaemon(true);
+			workers.add(worker);
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		done.await();
+	}
+
+	private void callUntilEnd(int offset) {
+		Random random = ThreadLocalRandom.current();
+		for (int i = offset;; i++) {
+			AccessEndpoint endpoint = endpoints[i % endpoints.length];
+			long start = System.nanoTime();
+			if (start >= measureEnd) {
+				return;
+			}
+			boolean failed = false;
+			try {
+				call(endpoint, random);
+			} catch (AccessException e) {
+				failed = true;
+			}
+			record(endpoint, start, failed);
+		}
+	}
+
+	private void prefetchUntilEnd() {
+		Random random = ThreadLocalRandom.current();
+		InfoEndpointDataSet dataSet = new InfoEndpointDataSet().withInfo();
+		Deque<String> sessions = new ArrayDeque<>();
+		Deque<Long> starts = new ArrayDeque<>();
+		for (;;) {
+			long now = System.nanoTime();
+			if ((sessions.size() < window) && (now < measureEnd)) {
+				String session = randomHex(random, 32);
+				try {
+					sdk.prefetch(session, dataSet);
+					sessions.add(session);
+					starts.add(now);
+				} catch (AccessException e) {
+					record(AccessEndpoint.INFO, now, true);
+				}
+				continue;
+			}
+			if (sessions.isEmpty()) {
+				return;
+			}
+			// the oldest client completes, joining its prefetch; the ones left after the end are drained
+			boolean failed = false;
+			try {
+				sdk.getDevice(sessions.poll());
+			} catch (AccessException e) {
+				failed = true;
+			}
+			record(AccessEndpoint.INFO, starts.poll(), failed);
+		}
+	}
+
+	private void record(AccessEndpoint endpoint, long start, boolean failed) {
+		if ((start >= measureStart) && (start < measureEnd)) {
+			long nanos = System.nanoTime() - start;
+			latencies.get(endpoint).record(nanos);
+			total.record(nanos);
+			if (failed) {
+				errors.incrementAndGet(endpoint.ordinal());
+			}
+		}
+	}
+
+	private void call(AccessEndpoint endpoint, Random random) throws AccessException {
+		// a new session every time, so no call is answered from the prefetch cache
+		String session = randomHex(random, 32);
+		String deviceId = randomHex(random, 32);
+		String uniq = "customer" + random.nextInt(10000) + "@example.com";
+		switch (endpoint) {
+		case VELOCITY:
+			sdk.getVelocity(session, uniq, "password");
+			break;
+		case DECISION:
+			sdk.getDecision(session, uniq, "password");
+			break;
+		case DEVICE:
+			sdk.getDevice(session);
+			break;
+		case DEVICE_TRUST_BY_DEVICE:
+			sdk.setDeviceTrustByDevice(deviceId, uniq, AccessSdk.TRUSTED_STATE_TRUSTED);
+			break;
+		case DEVICE_TRUST_BY_SESSION:
+			sdk.setDeviceTrustBySession(session, uniq, AccessSdk.TRUSTED_STATE_TRUSTED);
+			break;
+		case GET_DEVICES:
+			sdk.getDevices(uniq);
+			break;
+		case GET_UNIQUES:
+			sdk.getUniques(deviceId);
+			break;
+		case INFO:
+			sdk.getInfo(infoFlag, session, uniq, uniq, "password");
+			break;
+		default:
+			throw new IllegalArgumentException(endpoint.getName());
+		}
+	}
+
+	private static String randomHex(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = HEX[random.nextInt(16)];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return the latencies of the calls to the endpoint during the measured time, in nanoseconds.
+	 */
+	public LatencyHistogram getLatency(AccessEndpoint endpoint) {
+		return latencies.get(endpoint);
+	}
+
+	/**
+	 * @return the latencies of all the calls during the measured time, in nanoseconds.
+	 */
+	public LatencyHistogram getTotalLatency() {
+		return total;
+	}
+
+	/**
+	 * @return the number of failed calls to the endpoint during the measured time.
+	 */
+	public long getErrorCount(AccessEndpoint endpoint) {
+		return errors.get(endpoint.ordinal());
+	}
+
+	/**
+	 * Prints the throughput and latency percentiles (in milliseconds) of every endpoint and of all of them.
+	 */
+	public void report(PrintStream out) {
+		double seconds = (measureEnd - measureStart) / 1e9;
+		long totalErrors = 0;
+		out.println(String.format("%-22s %10s %8s %10s %9s %9s %9s %9s", "endpoint", "calls/s", "errors", "mean ms",
+				"p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+		for (AccessEndpoint endpoint : endpoints) {
+			if (latencies.get(endpoint).getCount() > 0) {
+				print(out, endpoint.getName(), latencies.get(endpoint), errors.get(endpoint.ordinal()), seconds);
+				totalErrors += errors.get(endpoint.ordinal());
+			}
+		}
+		print(out, "total", total, totalErrors, seconds);
+	}
+
+	private static void print(PrintStream out, String name, LatencyHistogram latency, long errors, double seconds) {
+		out.println(String.format("%-22s %10.1f %8d %10.3f %9.3f %9.3f %9.3f %9.3f", name,
+				latency.getCount() / seconds, errors, latency.getMean() / 1e6, latency.getValueAtPercentile(50) / 1e6,
+				latency.getValueAtPercentile(99) / 1e6, latency.getValueAtPercentile(99.9) / 1e6,
+				latency.getMax() / 1e6));
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = 16;
+		int asyncClients = 0;
+		long duration = 30;
+		long warmup = 5;
+		AccessEndpoint[] endpoints = AccessEndpoint.values();
+		LatencyDistribution latency = LatencyDistribution.parse("lognormal:2:20");
+		int payload = 0;
+		String host = null;
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "--async":
+				asyncClients = Integer.parseInt(value);
+				break;
+			case "--duration":
+				duration = Long.parseLong(value);
+				break;
+			case "--warmup":
+				warmup = Long.parseLong(value);
+				break;
+			case "--endpoints":
+				endpoints = parseEndpoints(value);
+				break;
+			case "--latency":
+				latency = LatencyDistribution.parse(value);
+				break;
+			case "--payload":
+				payload = Integer.parseInt(value);
+				break;
+			case "--host":
+				host = value;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		StubAccessServer server = null;
+		AccessSdkBuilder builder = AccessSdk.builder().merchantId(MERCHANT_ID).apiKey(API_KEY)
+				.maxConnections((asyncClients > 0) ? asyncClients : threads);
+		if (host == null) {
+			server = new StubAccessServer(latency, payload);
+			server.start(0);
+			host = server.getHost();
+			builder.sslContext(StubAccessServer.clientSslContext());
+		}
+		try (AccessSdk sdk = builder.host(host).build()) {
+			System.out.println("Load test of " + host + ": " + threads + " threads"
+					+ ((asyncClients > 0) ? ", " + asyncClients + " async clients" : "") + ", " + warmup
+					+ "s warm-up, " + duration + "s measured" + ((server != null) ? ", latency " + latency
+							+ ", payload " + payload + " bytes" : ""));
+			LoadTest test = new LoadTest(sdk, endpoints, threads, asyncClients);
+			test.run(TimeUnit.SECONDS.toMillis(warmup), TimeUnit.SECONDS.toMillis(duration));
+			test.report(System.out);
+		} finally {
+			if (server != null) {
+				server.stop();
+			}
+		}
+	}
+
+	private static AccessEndpoint[] parseEndpoints(String names) {
+		List<AccessEndpoint> endpoints = new ArrayList<>();
+		for (String name : names.split(",")) {
+			AccessEndpoint found = null;
+			for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+				if (endpoint.getName().equals(name.trim())) {
+					found = endpoint;
+				}
+			}
+			if (found == null) {
+				throw new IllegalArgumentException("Unknown endpoint " + name);
+			}
+			endpoints.add(found);
+		}
+		return endpoints.toArray(new AccessEndpoint[endpoints.size()]);
+	}
+}
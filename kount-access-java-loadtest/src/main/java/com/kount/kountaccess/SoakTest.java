@@ -0,0 +1,316 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Long-running load on all the endpoints of the {@link StubAccessServer}, with injected errors and slow responses,
+ * that samples the heap after GC, the open file descriptors, the pooled connections and the threads of the SDK over
+ * time. The run fails if any of them keeps growing, or if connections are still leased once the load stops.
+ * <p>
+ * Options ({@code --name value}):
+ * <ul>
+ * <li>{@code duration}: seconds (default 600)</li>
+ * <li>{@code interval}: seconds between two samples (default 10)</li>
+ * <li>{@code threads}: number of calling threads (default 16)</li>
+ * <li>{@code latency}: latency of the stub server (default lognormal:2:20)</li>
+ * <li>{@code errors}: share of failed responses (default 0.05)</li>
+ * <li>{@code slow}: share of slow responses (default 0.02)</li>
+ * <li>{@code slow-latency}: latency of the slow responses (default uniform:500:2000)</li>
+ * </ul>
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class SoakTest {
+
+	/**
+	 * Share of the samples left out of the drift check, while the JIT, the pool and the caches warm up
+	 */
+	static final double WARMUP_SHARE = 0.25;
+
+	/**
+	 * Heap growth allowed over the run, on top of {@link #HEAP_GROWTH_SHARE} of the initial heap
+	 */
+	static final long HEAP_GROWTH_BYTES = 8 * 1024 * 1024;
+
+	static final double HEAP_GROWTH_SHARE = 0.1;
+
+	static final long OPEN_FILES_GROWTH = 8;
+
+	static final long THREADS_GROWTH = 4;
+
+	/**
+	 * How long the leased connections have to be released once the load stops
+	 */
+	static final long RELEASE_TIMEOUT_MILLIS = 5000;
+
+	private static final String STUB_THREAD_PREFIX = "stub-access-server";
+
+	/**
+	 * Resources in use at one point of the run.
+	 */
+	static class Sample {
+
+		final long elapsedMillis;
+
+		final long heapBytes;
+
+		/**
+		 * -1 where the JVM doesn't expose it
+		 */
+		final long openFiles;
+
+		/**
+		 * threads of the JVM, without the stub server threads
+		 */
+		final long threads;
+
+		final long leasedConnections;
+
+		final long pooledConnections;
+
+		Sample(long elapsedMillis, long heapBytes, long openFiles, long threads, long leasedConnections,
+				long pooledConnections) {
+			this.elapsedMillis = elapsedMillis;
+			this.heapBytes = heapBytes;
+			this.openFiles = openFiles;
+			this.threads = threads;
+			this.leasedConnections = leasedConnections;
+			this.pooledConnections = pooledConnections;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%8.1fs heap = %6.1fMB, open files = %4d, threads = %4d, connections = %d leased, %d pooled",
+					elapsedMillis / 1000.0, heapBytes / (1024.0 * 1024.0), openFiles, threads, leasedConnections,
+					pooledConnections);
+		}
+	}
+
+	private final AccessSdk sdk;
+
+	private final LoadTest load;
+
+	private final List<Sample> samples = new ArrayList<>();
+
+	private long start;
+
+	public SoakTest(AccessSdk sdk, LoadTest load) {
+		this.sdk = sdk;
+		this.load = load;
+	}
+
+	/**
+	 * Runs the load and samples the resources until the end of the run.
+	 *
+	 * @return the problems found: drifting resources and connections not released; empty if none.
+	 */
+	public List<String> run(final long durationMillis, long intervalMillis, PrintStream out)
+			throws InterruptedException {
+		final InterruptedException[] interrupted = new InterruptedException[1];
+		Thread runner = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load.run(0, durationMillis);
+				} catch (InterruptedException e) {
+					interrupted[0] = e;
+				}
+			}
+		}, "soak-test-load");
+		start = System.nanoTime();
+		runner.start();
+		while (runner.isAlive()) {
+			runner.join(intervalMillis);
+			Sample sample = sample();
+			samples.add(sample);
+			out.println(sample + ", calls = " + load.getTotalLatency().getCount() + ", errors = " + errorCount());
+		}
+		if (interrupted[0] != null) {
+			throw interrupted[0];
+		}
+
+		List<String> problems = checkDrift(samples);
+		long releaseDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RELEASE_TIMEOUT_MILLIS);
+		long leased = leasedConnections();
+		while ((leased > 0) && (System.nanoTime() < releaseDeadline)) {
+			Thread.sleep(100);
+			leased = leasedConnections();
+		}
+		if (leased > 0) {
+			problems.add(leased + " connections still leased after the load stopped");
+		}
+		return problems;
+	}
+
+	public List<Sample> getSamples() {
+		return samples;
+	}
+
+	private long errorCount() {
+		long errors = 0;
+		for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+			errors += load.getErrorCount(endpoint);
+		}
+		return errors;
+	}
+
+	private Sample sample() {
+		System.gc();
+		System.gc();
+		long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		long openFiles = -1;
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+			openFiles = ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+		}
+		long threads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!thread.getName().startsWith(STUB_THREAD_PREFIX)) {
+				threads++;
+			}
+		}
+		PoolStats pool = sdk.getPoolStats();
+		long leased = (pool != null) ? pool.getLeased() : 0;
+		long pooled = (pool != null) ? pool.getLeased() + pool.getAvailable() : 0;
+		return new Sample(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), heap, openFiles, threads, leased,
+				pooled);
+	}
+
+	private long leasedConnections() {
+		PoolStats pool = sdk.getPoolStats();
+		return (pool != null) ? pool.getLeased() : 0;
+	}
+
+	/**
+	 * Fits a line to every resource over the samples after the warm-up, and reports the resources whose growth over
+	 * that time is more than allowed. The pool is bounded, so it is only checked for leased connections at the end.
+	 */
+	static List<String> checkDrift(List<Sample> samples) {
+		List<String> problems = new ArrayList<>();
+		List<Sample> measured = samples.subList((int) (samples.size() * WARMUP_SHARE), samples.size());
+		if (measured.size() < 3) {
+			problems.add("Not enough samples (" + measured.size() + ") after the warm-up to check the drift");
+			return problems;
+		}
+		long[] times = new long[measured.size()];
+		long[] heap = new long[measured.size()];
+		long[] openFiles = new long[measured.size()];
+		long[] threads = new long[measured.size()];
+		for (int i = 0; i < measured.size(); i++) {
+			Sample sample = measured.get(i);
+			times[i] = sample.elapsedMillis;
+			heap[i] = sample.heapBytes;
+			openFiles[i] = sample.openFiles;
+			threads[i] = sample.threads;
+		}
+		long heapAllowed = HEAP_GROWTH_BYTES + (long) (heap[0] * HEAP_GROWTH_SHARE);
+		check(problems, "heap (bytes)", times, heap, heapAllowed);
+		if (openFiles[0] >= 0) {
+			check(problems, "open files", times, openFiles, OPEN_FILES_GROWTH);
+		}
+		check(problems, "threads", times, threads, THREADS_GROWTH);
+		return problems;
+	}
+
+	private static void check(List<String> problems, String name, long[] times, long[] values, long allowed) {
+		double growth = slope(times, values) * (times[times.length - 1] - times[0]);
+		if (growth > allowed) {
+			problems.add(String.format("%s drifting up: %+.0f over %ds (allowed %d)", name, growth,
+					(times[times.length - 1] - times[0]) / 1000, allowed));
+		}
+	}
+
+	/**
+	 * @return the slope of the least squares line through the points.
+	 */
+	static double slope(long[] x, long[] y) {
+		double meanX = 0;
+		double meanY = 0;
+		for (int i = 0; i < x.length; i++) {
+			meanX += x[i];
+			meanY += y[i];
+		}
+		meanX /= x.length;
+		meanY /= y.length;
+		double covariance = 0;
+		double variance = 0;
+		for (int i = 0; i < x.length; i++) {
+			covariance += (x[i] - meanX) * (y[i] - meanY);
+			variance += (x[i] - meanX) * (x[i] - meanX);
+		}
+		return (variance > 0) ? covariance / variance : 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		long duration = 600;
+		long interval = 10;
+		int threads = 16;
+		LatencyDistribution latency = LatencyDistribution.parse("lognormal:2:20");
+		double errors = 0.05;
+		double slow = 0.02;
+		LatencyDistribution slowLatency = LatencyDistribution.parse("uniform:500:2000");
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 >= args.length) {
+				throw new IllegalArgumentException("Missing value of " + args[i]);
+			}
+			String value = args[i + 1];
+			switch (args[i]) {
+			case "--duration":
+				duration = Long.parseLong(value);
+				break;
+			case "--interval":
+				interval = Long.parseLong(value);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(value);
+				break;
+			case "--latency":
+				latency = LatencyDistribution.parse(value);
+				break;
+			case "--errors":
+				errors = Double.parseDouble(value);
+				break;
+			case "--slow":
+				slow = Double.parseDouble(value);
+				break;
+			case "--slow-latency":
+				slowLatency = LatencyDistribution.parse(value);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		StubAccessServer server = new StubAccessServer(latency, 0);
+		server.setFaults(errors, slow, slowLatency);
+		server.start(0);
+		List<String> problems;
+		try (AccessSdk sdk = AccessSdk.builder().host(server.getHost()).merchantId(999999).apiKey("soak-test-api-key")
+				.maxConnections(threads).sslContext(StubAccessServer.clientSslContext()).build()) {
+			System.out.println("Soak test of " + server.getHost() + ": " + threads + " threads, " + duration
+					+ "s, latency " + latency + ", " + errors + " errors, " + slow + " slow (" + slowLatency + ")");
+			LoadTest load = new LoadTest(sdk, AccessEndpoint.values(), threads);
+			problems = new SoakTest(sdk, load).run(TimeUnit.SECONDS.toMillis(duration),
+					TimeUnit.SECONDS.toMillis(interval), System.out);
+			load.report(System.out);
+		} finally {
+			server.stop();
+		}
+		for (String problem : problems) {
+			System.out.println("FAILED: " + problem);
+		}
+		System.exit(problems.isEmpty() ? 0 : 1);
+	}
+}
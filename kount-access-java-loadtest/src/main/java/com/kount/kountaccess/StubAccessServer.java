@@ -0,0 +1,299 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * Embedded HTTPS server that answers the eight Access endpoints with canned responses, after a configurable latency
+ * and padded to a configurable size. It listens on localhost only, with a self-signed certificate for localhost (see
+ * {@link #clientSslContext()}), so the load test runs offline.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class StubAccessServer {
+
+	private static final String KEYSTORE = "/stub-keystore.jks";
+
+	private static final char[] KEYSTORE_PASSWORD = "loadtest".toCharArray();
+
+	private static final String RESPONSE_ID = "baa5211cdfbf460c967bd81d574ae353";
+
+	private static final String DEVICE = "\"device\":{\"id\":\"7041cca3e5f94391a7a02316b0a8f384\","
+			+ "\"ipAddress\":\"10.0.0.1\",\"ipGeo\":\"BG\",\"mobile\":0,\"proxy\":0,\"tor\":0,\"region\":\"53\","
+			+ "\"country\":\"BG\",\"geoLat\":43.8564,\"geoLong\":25.9708}";
+
+	private static final String VELOCITY = "\"velocity\":{"
+			+ "\"account\":{\"dlh\":1,\"dlm\":1,\"iplh\":1,\"iplm\":1,\"plh\":1,\"plm\":1,\"ulh\":1,\"ulm\":1},"
+			+ "\"device\":{\"alh\":1,\"alm\":1,\"iplh\":1,\"iplm\":1,\"plh\":1,\"plm\":1,\"ulh\":1,\"ulm\":1},"
+			+ "\"ip_address\":{\"alh\":1,\"alm\":1,\"dlh\":1,\"dlm\":1,\"plh\":1,\"plm\":1,\"ulh\":1,\"ulm\":1},"
+			+ "\"password\":{\"alh\":1,\"alm\":1,\"dlh\":1,\"dlm\":1,\"iplh\":1,\"iplm\":1,\"ulh\":1,\"ulm\":1},"
+			+ "\"user\":{\"alh\":1,\"alm\":1,\"dlh\":1,\"dlm\":1,\"iplh\":1,\"iplm\":1,\"plh\":1,\"plm\":1}}";
+
+	private static final String DECISION = "\"decision\":{\"errors\":[],\"warnings\":[],\"reply\":{\"ruleEvents\":{"
+			+ "\"decision\":\"A\",\"total\":0,\"ruleEvents\":null}}}";
+
+	/**
+	 * Truncated JSON body of the injected errors
+	 */
+	private static final byte[] MALFORMED_RESPONSE = "{\"response_id\":".getBytes(StandardCharsets.UTF_8);
+
+	static {
+		// the headers and body are written separately: without TCP_NODELAY every response waits for a delayed ACK
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final LatencyDistribution latency;
+
+	private final Map<AccessEndpoint, byte[]> responses = new EnumMap<>(AccessEndpoint.class);
+
+	private final AtomicLongArray requests = new AtomicLongArray(AccessEndpoint.values().length);
+
+	private volatile double errorRate;
+
+	private volatile double slowRate;
+
+	private volatile LatencyDistribution slowLatency = LatencyDistribution.NONE;
+
+	private HttpsServer server;
+
+	private ExecutorService executor;
+
+	/**
+	 * @param latency
+	 *            latency added to every response
+	 * @param payloadBytes
+	 *            minimum size of the responses; smaller responses are padded with a {@code padding} field
+	 */
+	public StubAccessServer(LatencyDistribution latency, int payloadBytes) {
+		this.latency = latency;
+		String responseId = "\"response_id\":\"" + RESPONSE_ID + "\"";
+		String uniques = "\"uniques\":[{\"unique\":\"customer@example.com\","
+				+ "\"datelastseen\":\"2018-08-22T10:20:15.025Z\",\"truststate\":\"trusted\"}]";
+		String devices = "\"devices\":[{\"deviceid\":\"7041cca3e5f94391a7a02316b0a8f384\",\"truststate\":\"trusted\","
+				+ "\"datefirstseen\":\"2018-08-21T13:04:38.396Z\",\"friendlyname\":\"\"}]";
+		String info = "\"behavioSec\":{\"isBot\":false,\"isTrained\":false,\"score\":0,\"confidence\":0,"
+				+ "\"policyId\":4}," + DECISION + "," + DEVICE + ",\"trusted\":{\"state\":\"trusted\"}," + VELOCITY;
+		responses.put(AccessEndpoint.VELOCITY, response(payloadBytes, DEVICE, responseId, VELOCITY));
+		responses.put(AccessEndpoint.DECISION, response(payloadBytes, DECISION, DEVICE, responseId, VELOCITY));
+		responses.put(AccessEndpoint.DEVICE, response(payloadBytes, DEVICE, responseId));
+		responses.put(AccessEndpoint.DEVICE_TRUST_BY_DEVICE, response(payloadBytes, responseId));
+		responses.put(AccessEndpoint.DEVICE_TRUST_BY_SESSION, response(payloadBytes, responseId));
+		responses.put(AccessEndpoint.GET_DEVICES, response(payloadBytes, responseId, devices));
+		responses.put(AccessEndpoint.GET_UNIQUES, response(payloadBytes, responseId, uniques));
+		responses.put(AccessEndpoint.INFO, response(payloadBytes, info, responseId));
+	}
+
+	/**
+	 * Starts the server on localhost.
+	 *
+	 * @param port
+	 *            the port, or 0 for any free port
+	 * @return the port the server listens on.
+	 */
+	public synchronized int start(int port) throws IOException {
+		server = HttpsServer.create(new InetSocketAddress("localhost", port), 1024);
+		server.setHttpsConfigurator(new HttpsConfigurator(createSslContext()));
+		// one thread per request in flight, so the latency doesn't limit the concurrency
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threads = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "stub-access-server-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+			server.createContext(endpoint.getPath(), new EndpointHandler(endpoint));
+		}
+		server.start();
+		return server.getAddress().getPort();
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * @return the host to give to the {@link AccessSdk}, e.g. localhost:8443.
+	 */
+	public synchronized String getHost() {
+		return "localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Injects faults into a share of the responses: errors (a 503, or a 200 with a truncated JSON body) and slow
+	 * responses, with a latency of their own instead of the normal one.
+	 *
+	 * @param errorRate
+	 *            share of the responses that fail, between 0 and 1
+	 * @param slowRate
+	 *            share of the responses that are slow, between 0 and 1
+	 * @param slowLatency
+	 *            latency of the slow responses
+	 */
+	public void setFaults(double errorRate, double slowRate, LatencyDistribution slowLatency) {
+		if ((errorRate < 0) || (errorRate > 1) || (slowRate < 0) || (slowRate > 1)) {
+			throw new IllegalArgumentException("Invalid fault rates (" + errorRate + ", " + slowRate
+					+ ").  Must be between 0 and 1.");
+		}
+		this.errorRate = errorRate;
+		this.slowRate = slowRate;
+		this.slowLatency = slowLatency;
+	}
+
+	/**
+	 * @return the number of requests the endpoint received.
+	 */
+	public long getRequestCount(AccessEndpoint endpoint) {
+		return requests.get(endpoint.ordinal());
+	}
+
+	/**
+	 * @return an SSL context trusting the certificate of the stub server, for
+	 *         {@link AccessSdkBuilder#sslContext(SSLContext)}.
+	 */
+	public static SSLContext clientSslContext() throws IOException {
+		try (InputStream in = StubAccessServer.class.getResourceAsStream(KEYSTORE)) {
+			KeyStore trustStore = KeyStore.getInstance("JKS");
+			trustStore.load(in, KEYSTORE_PASSWORD);
+			TrustManagerFactory trustManagers =
+					TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			trustManagers.init(trustStore);
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, trustManagers.getTrustManagers(), null);
+			return sslContext;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Could not load the stub server certificate", e);
+		}
+	}
+
+	private static SSLContext createSslContext() throws IOException {
+		try (InputStream in = StubAccessServer.class.getResourceAsStream(KEYSTORE)) {
+			KeyStore keyStore = KeyStore.getInstance("JKS");
+			keyStore.load(in, KEYSTORE_PASSWORD);
+			KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagers.init(keyStore, KEYSTORE_PASSWORD);
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(keyManagers.getKeyManagers(), null, null);
+			return sslContext;
+		} catch (GeneralSecurityException e) {
+			throw new IOException("Could not load the stub server key", e);
+		}
+	}
+
+	private static byte[] response(int payloadBytes, String... fields) {
+		StringBuilder response = new StringBuilder("{");
+		for (String field : fields) {
+			if (response.length() > 1) {
+				response.append(',');
+			}
+			response.append(field);
+		}
+		int padding = payloadBytes - response.length() - ",\"padding\":\"\"}".length();
+		if (padding > 0) {
+			response.append(",\"padding\":\"");
+			for (int i = 0; i < padding; i++) {
+				response.append('x');
+			}
+			response.append('"');
+		}
+		return response.append('}').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private class EndpointHandler implements HttpHandler {
+
+		private final AccessEndpoint endpoint;
+
+		private final byte[] response;
+
+		EndpointHandler(AccessEndpoint endpoint) {
+			this.endpoint = endpoint;
+			this.response = responses.get(endpoint);
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				requests.incrementAndGet(endpoint.ordinal());
+				InputStream in = exchange.getRequestBody();
+				byte[] buffer = new byte[1024];
+				while (in.read(buffer) >= 0) {
+					// drain the form parameters
+				}
+				Random random = ThreadLocalRandom.current();
+				boolean slow = random.nextDouble() < slowRate;
+				long nanos = (slow ? slowLatency : latency).nextNanos(random);
+				long deadline = System.nanoTime() + nanos;
+				while (nanos > 0) {
+					LockSupport.parkNanos(nanos);
+					nanos = deadline - System.nanoTime();
+				}
+				exchange.getResponseHeaders().set("Content-Type", "application/json");
+				if (random.nextDouble() >= errorRate) {
+					exchange.sendResponseHeaders(200, response.length);
+					exchange.getResponseBody().write(response);
+				} else if (random.nextBoolean()) {
+					exchange.sendResponseHeaders(503, -1);
+				} else {
+					exchange.sendResponseHeaders(200, MALFORMED_RESPONSE.length);
+					exchange.getResponseBody().write(MALFORMED_RESPONSE);
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs the stub server alone, e.g. to point another client at it.
+	 *
+	 * @param args
+	 *            port (default 8443), latency (default none) and payload size in bytes (default 0)
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8443;
+		LatencyDistribution latency = (args.length > 1) ? LatencyDistribution.parse(args[1])
+				: LatencyDistribution.NONE;
+		int payloadBytes = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+		StubAccessServer server = new StubAccessServer(latency, payloadBytes);
+		port = server.start(port);
+		System.out.println("Stub Access server listening on https://localhost:" + port + " (latency " + latency
+				+ ", payloads of at least " + payloadBytes + " bytes)");
+	}
+}
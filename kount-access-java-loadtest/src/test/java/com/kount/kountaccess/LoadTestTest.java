@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit Tests around the load test harness: the SDK against the stub server over HTTPS on all the endpoints.
+ *
+ * @author custserv@kount.com
+ */
+public class LoadTestTest {
+
+	private static StubAccessServer server;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		server = new StubAccessServer(LatencyDistribution.parse("fixed:1"), 2048);
+		server.start(0);
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		server.stop();
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.LoadTest#run(long, long)} on all the endpoints.
+	 */
+	@Test
+	public void testAllEndpoints() throws Exception {
+		AccessSdk sdk = createSdk();
+		LoadTest test = new LoadTest(sdk, AccessEndpoint.values(), 4);
+
+		test.run(1000, 1000);
+
+		for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+			assertTrue(endpoint.getName(), test.getLatency(endpoint).getCount() > 0);
+			assertEquals(endpoint.getName(), 0, test.getErrorCount(endpoint));
+			assertTrue(endpoint.getName(), server.getRequestCount(endpoint) > 0);
+			// at least the latency of the stub server
+			assertTrue(endpoint.getName(), test.getLatency(endpoint).getValueAtPercentile(50) >= 1000000);
+		}
+		ByteArrayOutputStream report = new ByteArrayOutputStream();
+		test.report(new PrintStream(report, true));
+		assertTrue(report.toString().contains("getdevices"));
+		assertTrue(report.toString().contains("total"));
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.LoadTest#run(long, long)} in the async mode: the info of the
+	 * sessions is prefetched, and every prefetch is joined.
+	 */
+	@Test
+	public void testAsyncClients() throws Exception {
+		try (AccessSdk sdk = createSdk()) {
+			HistogramAccessMetrics metrics = new HistogramAccessMetrics();
+			sdk.setMetrics(metrics);
+			long requests = server.getRequestCount(AccessEndpoint.INFO);
+			LoadTest test = new LoadTest(sdk, AccessEndpoint.values(), 2, 8);
+
+			test.run(500, 1000);
+
+			long calls = test.getLatency(AccessEndpoint.INFO).getCount();
+			assertTrue(calls > 0);
+			assertEquals(0, test.getErrorCount(AccessEndpoint.INFO));
+			assertEquals(calls, test.getTotalLatency().getCount());
+			// every client was answered by its prefetch
+			assertEquals(0, metrics.getCallCount(AccessEndpoint.DEVICE));
+			assertEquals(0, sdk.getPrefetchCache().getMisses());
+			assertTrue(sdk.getPrefetchCache().getHits() >= calls);
+			assertEquals(sdk.getPrefetchCache().getHits(), server.getRequestCount(AccessEndpoint.INFO) - requests);
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.StubAccessServer} padded responses.
+	 */
+	@Test
+	public void testPayloadSize() throws Exception {
+		AccessSdk sdk = createSdk();
+		HistogramAccessMetrics metrics = new HistogramAccessMetrics();
+		sdk.setMetrics(metrics);
+
+		sdk.getDevices("customer@example.com");
+
+		assertEquals(2048, metrics.getBytesReceived(AccessEndpoint.GET_DEVICES));
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.AccessSdk#warmUp(int)} over HTTPS: the connections are pooled
+	 * without any request, and reused by the calls.
+	 */
+	@Test
+	public void testWarmUp() throws Exception {
+		AccessSdk sdk = AccessSdk.builder().host(server.getHost()).merchantId(999999).apiKey("load-test-api-key")
+				.sslContext(StubAccessServer.clientSslContext()).maxConnections(4).build();
+		long requests = server.getRequestCount(AccessEndpoint.GET_UNIQUES);
+
+		assertEquals(4, sdk.warmUp(8));
+
+		assertEquals(4, sdk.getPoolStats().getAvailable());
+		assertEquals(0, sdk.getPoolStats().getLeased());
+		assertEquals(requests, server.getRequestCount(AccessEndpoint.GET_UNIQUES));
+		HistogramAccessMetrics metrics = new HistogramAccessMetrics();
+		sdk.setMetrics(metrics);
+		sdk.getUniques("7041cca3e5f94391a7a02316b0a8f384");
+		// no new connection
+		assertEquals(0, metrics.getPhaseLatency(AccessEndpoint.GET_UNIQUES, AccessPhase.CONNECT).getMax());
+		assertEquals(4, sdk.getPoolStats().getAvailable());
+		sdk.close();
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.AccessSdkBuilder#hosts(String...)} over HTTPS: with the first host
+	 * down, the calls fail over to the second one and keep going there.
+	 */
+	@Test
+	public void testFailover() throws Exception {
+		String deadHost;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			deadHost = "localhost:" + socket.getLocalPort();
+		}
+		AccessSdk sdk = AccessSdk.builder().hosts(deadHost, server.getHost()).merchantId(999999)
+				.apiKey("load-test-api-key").sslContext(StubAccessServer.clientSslContext()).maxConnections(4).build();
+		long requests = server.getRequestCount(AccessEndpoint.GET_UNIQUES);
+
+		for (int i = 0; i < 5; i++) {
+			sdk.getUniques("7041cca3e5f94391a7a02316b0a8f384");
+		}
+
+		assertEquals(requests + 5, server.getRequestCount(AccessEndpoint.GET_UNIQUES));
+		HostSelector.Host dead = sdk.getHostSelector().getHosts().get(0);
+		assertTrue(dead.isEjected(System.nanoTime()));
+		assertEquals(0, dead.getInFlight());
+		sdk.close();
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.AccessSdkBuilder#keepAlive(int, long, long)}: the minimum number
+	 * of connections is opened without any call, kept while connections are replaced, and reused by the calls.
+	 */
+	@Test
+	public void testKeepAlive() throws Exception {
+		long requests = server.getRequestCount(AccessEndpoint.GET_UNIQUES);
+		AccessSdk sdk = AccessSdk.builder().host(server.getHost()).merchantId(999999).apiKey("load-test-api-key")
+				.sslContext(StubAccessServer.clientSslContext()).maxConnections(4).keepAlive(3, 20, 250).build();
+
+		awaitAvailable(sdk, 3);
+		// longer than the maximum idle time: the connections were replaced at least once
+		Thread.sleep(600);
+		awaitAvailable(sdk, 3);
+
+		assertEquals(requests, server.getRequestCount(AccessEndpoint.GET_UNIQUES));
+		HistogramAccessMetrics metrics = new HistogramAccessMetrics();
+		sdk.setMetrics(metrics);
+		sdk.getUniques("7041cca3e5f94391a7a02316b0a8f384");
+		assertEquals(0, metrics.getPhaseLatency(AccessEndpoint.GET_UNIQUES, AccessPhase.CONNECT).getMax());
+		sdk.close();
+	}
+
+	private static void awaitAvailable(AccessSdk sdk, int connections) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (sdk.getPoolStats().getAvailable() < connections) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Connections not opened: " + sdk.getPoolStats());
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private static AccessSdk createSdk() throws Exception {
+		return AccessSdk.builder().host(server.getHost()).merchantId(999999).apiKey("load-test-api-key")
+				.sslContext(StubAccessServer.clientSslContext()).build();
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.LatencyDistribution#parse(String)}.
+	 */
+	@Test
+	public void testLatencyDistribution() {
+		Random random = new Random(42);
+		assertEquals(0, LatencyDistribution.parse("none").nextNanos(random));
+		assertEquals(1500000, LatencyDistribution.parse("fixed:1.5").nextNanos(random));
+		long uniform = LatencyDistribution.parse("uniform:1:2").nextNanos(random);
+		assertTrue((uniform >= 1000000) && (uniform <= 2000000));
+		LatencyDistribution logNormal = LatencyDistribution.parse("lognormal:2:20");
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 100000; i++) {
+			histogram.record(logNormal.nextNanos(random));
+		}
+		assertEquals(2.0, histogram.getValueAtPercentile(50) / 1e6, 0.2);
+		assertEquals(20.0, histogram.getValueAtPercentile(99) / 1e6, 2.0);
+
+		for (String invalid : new String[] { "fixed", "uniform:2:1", "lognormal:2:1", "gamma:1", "fixed:x" }) {
+			try {
+				LatencyDistribution.parse(invalid);
+				fail("Exception Not thrown for " + invalid);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.kount.kountaccess.SoakTest.Sample;
+
+/**
+ * Unit Tests around the soak test: a short run with injected faults, and the drift check.
+ *
+ * @author custserv@kount.com
+ */
+public class SoakTestTest {
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.SoakTest#run(long, long, PrintStream)} with errors and slow
+	 * responses.
+	 */
+	@Test
+	public void testShortSoakWithFaults() throws Exception {
+		StubAccessServer server = new StubAccessServer(LatencyDistribution.parse("fixed:1"), 0);
+		server.setFaults(0.2, 0.05, LatencyDistribution.parse("fixed:50"));
+		server.start(0);
+		try {
+			AccessSdk sdk = AccessSdk.builder().host(server.getHost()).merchantId(999999).apiKey("soak-test-api-key")
+					.sslContext(StubAccessServer.clientSslContext()).build();
+			LoadTest load = new LoadTest(sdk, AccessEndpoint.values(), 4);
+			SoakTest soak = new SoakTest(sdk, load);
+
+			List<String> problems = soak.run(3000, 250, new PrintStream(new ByteArrayOutputStream()));
+
+			assertTrue(problems.toString(), problems.isEmpty());
+			assertTrue(soak.getSamples().size() >= 8);
+			long errors = 0;
+			for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+				errors += load.getErrorCount(endpoint);
+			}
+			assertTrue(errors > 0);
+			assertEquals(0, sdk.getPoolStats().getLeased());
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.SoakTest#checkDrift(List)}.
+	 */
+	@Test
+	public void testCheckDrift() {
+		List<Sample> flat = new ArrayList<>();
+		List<Sample> leaking = new ArrayList<>();
+		long mb = 1024 * 1024;
+		for (int i = 0; i < 20; i++) {
+			// noise of a few MB either way, but no trend
+			flat.add(new Sample(i * 1000, (50 + ((i % 3) * 3)) * mb, 40 + (i % 2), 30, 4, 16));
+			leaking.add(new Sample(i * 1000, (50 + i) * mb, 40 + i, 30 + i, 4, 16));
+		}
+
+		assertTrue(SoakTest.checkDrift(flat).isEmpty());
+		List<String> problems = SoakTest.checkDrift(leaking);
+		assertEquals(problems.toString(), 3, problems.size());
+		assertTrue(problems.get(0).startsWith("heap"));
+		assertTrue(problems.get(1).startsWith("open files"));
+		assertTrue(problems.get(2).startsWith("threads"));
+	}
+}
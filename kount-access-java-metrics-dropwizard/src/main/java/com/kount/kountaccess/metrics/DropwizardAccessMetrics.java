@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package com.kount.kountaccess.metrics;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.kount.kountaccess.AccessCall;
+import com.kount.kountaccess.AccessEndpoint;
+import com.kount.kountaccess.AccessException.AccessErrorType;
+import com.kount.kountaccess.AccessMetrics;
+import com.kount.kountaccess.AccessPhase;
+
+/**
+ * {@link AccessMetrics} reporting to a Dropwizard {@link MetricRegistry}. For each endpoint, e.g. with the default
+ * prefix and the info endpoint:
+ * <ul>
+ * <li>{@code kount.access.info.latency}: timer of the calls</li>
+ * <li>{@code kount.access.info.phase.pool_lease} (and queue, dns, connect, tls, server, body_read, parse): timers of
+ * the phases of the calls, only updated by the calls that went through the phase</li>
+ * <li>{@code kount.access.info.in-flight}: counter of the calls in flight</li>
+ * <li>{@code kount.access.info.status.2xx} (and 4xx, 5xx, etc., and {@code none} without response): meters of the
+ * response status classes</li>
+ * <li>{@code kount.access.info.errors.network_error} (and the other error types): meters of the failed calls</li>
+ * <li>{@code kount.access.info.bytes-sent} and {@code kount.access.info.bytes-received}: histograms of the body
+ * sizes</li>
+ * </ul>
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class DropwizardAccessMetrics implements AccessMetrics {
+
+	private static final AccessPhase[] PHASES = AccessPhase.values();
+
+	/**
+	 * Default prefix of the metric names.
+	 */
+	public static final String DEFAULT_PREFIX = "kount.access";
+
+	private final EndpointMetrics[] endpoints;
+
+	/**
+	 * Registers the metrics with the default prefix.
+	 */
+	public DropwizardAccessMetrics(MetricRegistry registry) {
+		this(registry, DEFAULT_PREFIX);
+	}
+
+	/**
+	 * Registers the metrics, named {@code <prefix>.<endpoint>.<metric>}.
+	 */
+	public DropwizardAccessMetrics(MetricRegistry registry, String prefix) {
+		AccessEndpoint[] values = AccessEndpoint.values();
+		endpoints = new EndpointMetrics[values.length];
+		for (AccessEndpoint endpoint : values) {
+			endpoints[endpoint.ordinal()] = new EndpointMetrics(registry, name(prefix, endpoint.getName()));
+		}
+	}
+
+	@Override
+	public void callStarted(AccessEndpoint endpoint) {
+		endpoints[endpoint.ordinal()].inFlight.inc();
+	}
+
+	@Override
+	public void callCompleted(AccessCall call) {
+		EndpointMetrics metrics = endpoints[call.getEndpoint().ordinal()];
+		metrics.inFlight.dec();
+		metrics.latency.update(call.getDurationNanos(), TimeUnit.NANOSECONDS);
+		for (int i = 0; i < metrics.phases.length; i++) {
+			long nanos = call.getPhaseNanos(PHASES[i]);
+			if (nanos > 0) {
+				metrics.phases[i].update(nanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		metrics.statusClasses[Math.min(5, Math.max(0, call.getStatusCode() / 100))].mark();
+		if (call.getErrorType() != null) {
+			metrics.errors[call.getErrorType().ordinal()].mark();
+		}
+		metrics.bytesSent.update(call.getBytesSent());
+		metrics.bytesReceived.update(call.getBytesReceived());
+	}
+
+	private static class EndpointMetrics {
+		final Timer latency;
+		final Timer[] phases = new Timer[PHASES.length];
+		final Counter inFlight;
+		final Meter[] statusClasses = new Meter[6];
+		final Meter[] errors;
+		final Histogram bytesSent;
+		final Histogram bytesReceived;
+
+		EndpointMetrics(MetricRegistry registry, String prefix) {
+			latency = registry.timer(name(prefix, "latency"));
+			for (AccessPhase phase : PHASES) {
+				phases[phase.ordinal()] = registry.timer(name(prefix, "phase", phase.name().toLowerCase()));
+			}
+			inFlight = registry.counter(name(prefix, "in-flight"));
+			statusClasses[0] = registry.meter(name(prefix, "status", "none"));
+			for (int i = 1; i < statusClasses.length; i++) {
+				statusClasses[i] = registry.meter(name(prefix, "status", i + "xx"));
+			}
+			AccessErrorType[] types = AccessErrorType.values();
+			errors = new Meter[types.length];
+			for (AccessErrorType type : types) {
+				errors[type.ordinal()] = registry.meter(name(prefix, "errors", type.name().toLowerCase()));
+			}
+			bytesSent = registry.histogram(name(prefix, "bytes-sent"));
+			bytesReceived = registry.histogram(name(prefix, "bytes-received"));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package com.kount.kountaccess.metrics;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.kount.kountaccess.AccessCall;
+import com.kount.kountaccess.AccessEndpoint;
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Unit Tests around the Dropwizard metrics adapter.
+ *
+ * @author custserv@kount.com
+ */
+public class DropwizardAccessMetricsTest {
+
+	/**
+	 * Test method for {@link DropwizardAccessMetrics#callCompleted(AccessCall)}.
+	 */
+	@Test
+	public void testCallsReported() {
+		MetricRegistry registry = new MetricRegistry();
+		DropwizardAccessMetrics metrics = new DropwizardAccessMetrics(registry);
+
+		metrics.callStarted(AccessEndpoint.INFO);
+		assertEquals(1, registry.counter("kount.access.info.in-flight").getCount());
+		metrics.callCompleted(mockCall(AccessEndpoint.INFO, 200, null, 1500000));
+		metrics.callStarted(AccessEndpoint.INFO);
+		metrics.callCompleted(mockCall(AccessEndpoint.INFO, 0, AccessErrorType.NETWORK_ERROR, 3000000));
+
+		assertEquals(0, registry.counter("kount.access.info.in-flight").getCount());
+		assertEquals(2, registry.timer("kount.access.info.latency").getCount());
+		assertEquals(3000000, registry.timer("kount.access.info.latency").getSnapshot().getMax());
+		assertEquals(1, registry.meter("kount.access.info.status.2xx").getCount());
+		assertEquals(1, registry.meter("kount.access.info.status.none").getCount());
+		assertEquals(1, registry.meter("kount.access.info.errors.network_error").getCount());
+		assertEquals(0, registry.timer("kount.access.device.latency").getCount());
+	}
+
+	private AccessCall mockCall(AccessEndpoint endpoint, int statusCode, AccessErrorType errorType, long nanos) {
+		AccessCall call = mock(AccessCall.class);
+		doReturn(endpoint).when(call).getEndpoint();
+		doReturn(statusCode).when(call).getStatusCode();
+		doReturn(errorType).when(call).getErrorType();
+		doReturn(nanos).when(call).getDurationNanos();
+		return call;
+	}
+}
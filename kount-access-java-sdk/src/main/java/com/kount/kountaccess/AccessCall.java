@@ -0,0 +1,211 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Measurements of a single call to the Kount Access API, reported to {@link AccessMetrics#callCompleted(AccessCall)}.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class AccessCall {
+
+	private static final int PHASES = AccessPhase.values().length;
+
+	/**
+	 * The call in progress on the current thread, for the connection hooks to record the phases in
+	 */
+	private static final ThreadLocal<AccessCall> current = new ThreadLocal<>();
+
+	private final AccessEndpoint endpoint;
+
+	private final int merchantId;
+
+	private final long startNanos;
+
+	private long durationNanos;
+
+	private int statusCode;
+
+	private AccessErrorType errorType;
+
+	private long bytesSent;
+
+	private long bytesReceived;
+
+	private final long[] phaseNanos = new long[PHASES];
+
+	private String responseId;
+
+	private int attempts;
+
+	/**
+	 * Flight recorder event of the call, if recording
+	 */
+	Object flightEvent;
+
+	/**
+	 * Interceptors called before the request, and their states, if there are any
+	 */
+	AccessInterceptor[] interceptors;
+
+	Object[] interceptorStates;
+
+	AccessCall(AccessEndpoint endpoint, int merchantId) {
+		this.endpoint = endpoint;
+		this.merchantId = merchantId;
+		this.startNanos = System.nanoTime();
+	}
+
+	public AccessEndpoint getEndpoint() {
+		return endpoint;
+	}
+
+	public int getMerchantId() {
+		return merchantId;
+	}
+
+	/**
+	 * @return the response_id of the response, or null if the call failed or its response is not parsed (e.g. trust
+	 *         updates).
+	 */
+	public String getResponseId() {
+		return responseId;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} the call started at.
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * @return the duration of the call in nanoseconds.
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return the HTTP status code of the response, or 0 if no response was received.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return the type of the error the call failed with, or null if it succeeded.
+	 */
+	public AccessErrorType getErrorType() {
+		return errorType;
+	}
+
+	/**
+	 * @return the size of the request body in bytes.
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * @return the size of the response body in bytes.
+	 */
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * @param phase
+	 *            the phase of the call
+	 * @return the time spent in the phase in nanoseconds, 0 if the call skipped it (e.g. no TLS handshake on a
+	 *         kept-alive connection).
+	 */
+	public long getPhaseNanos(AccessPhase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * @return the number of times the request was sent again by the HTTP client after an I/O error.
+	 */
+	public int getRetries() {
+		return Math.max(0, attempts - 1);
+	}
+
+	public boolean isSuccess() {
+		return errorType == null;
+	}
+
+	void complete() {
+		durationNanos = System.nanoTime() - startNanos;
+	}
+
+	void addPhaseNanos(AccessPhase phase, long nanos) {
+		phaseNanos[phase.ordinal()] += nanos;
+	}
+
+	/**
+	 * Adds the time elapsed since {@code startNanos} to the phase of the call in progress on the current thread, if
+	 * any.
+	 */
+	static void recordPhase(AccessPhase phase, long startNanos) {
+		AccessCall call = current.get();
+		if (call != null) {
+			call.addPhaseNanos(phase, System.nanoTime() - startNanos);
+		}
+	}
+
+	static AccessCall current() {
+		return current.get();
+	}
+
+	static void setCurrent(AccessCall call) {
+		if (call != null) {
+			current.set(call);
+		} else {
+			current.remove();
+		}
+	}
+
+	void attempted() {
+		attempts++;
+	}
+
+	void setResponseId(String responseId) {
+		this.responseId = responseId;
+	}
+
+	void setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	void setErrorType(AccessErrorType errorType) {
+		this.errorType = errorType;
+	}
+
+	void setBytesSent(long bytesSent) {
+		this.bytesSent = bytesSent;
+	}
+
+	void setBytesReceived(long bytesReceived) {
+		this.bytesReceived = bytesReceived;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(endpoint.getName()).append(": duration = ")
+				.append(durationNanos / 1000).append("us, status = ").append(statusCode).append(", error = ")
+				.append(errorType).append(", sent = ").append(bytesSent).append(", received = ").append(bytesReceived)
+				.append(", retries = ").append(getRetries());
+		for (AccessPhase phase : AccessPhase.values()) {
+			if (phaseNanos[phase.ordinal()] > 0) {
+				result.append(", ").append(phase.name().toLowerCase()).append(" = ")
+						.append(phaseNanos[phase.ordinal()] / 1000).append("us");
+			}
+		}
+		return result.toString();
+	}
+}
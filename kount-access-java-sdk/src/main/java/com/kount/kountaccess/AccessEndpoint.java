@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+/**
+ * The Kount Access API endpoints called by the {@link AccessSdk}.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public enum AccessEndpoint {
+	VELOCITY("velocity"),
+	DECISION("decision"),
+	DEVICE("device"),
+	DEVICE_TRUST_BY_DEVICE("devicetrustbydevice"),
+	DEVICE_TRUST_BY_SESSION("devicetrustbysession"),
+	GET_DEVICES("getdevices"),
+	GET_UNIQUES("getuniques"),
+	INFO("info");
+
+	private final String name;
+
+	private AccessEndpoint(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @return the name of the endpoint as used in its path (e.g. getdevices).
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the path of the endpoint (e.g. /api/getdevices).
+	 */
+	public String getPath() {
+		return "/api/" + name;
+	}
+}
@@ -36,6 +36,15 @@ public class AccessException extends Exception {
 		 * Internal error
 		 */
 		INTERNAL_ERROR,
+		/**
+		 * The call was not accepted, because the {@link AccessSdk} is closed or closing, or its dispatch queue is full
+		 * (see {@link AccessSdkBuilder#adaptiveConcurrency(int, int)})
+		 */
+		REJECTED,
+		/**
+		 * The deadline of the call (see {@link CallOptions#withDeadline(long)}) passed before its response was received
+		 */
+		DEADLINE_EXCEEDED,
 	}
 
 	/**
@@ -43,6 +52,11 @@ public class AccessException extends Exception {
 	 */
 	private AccessErrorType error;
 
+	/**
+	 * Measurements of the failed call, if the error happened during a call to the API
+	 */
+	private transient AccessCall call;
+
 	/**
 	 * Custom exception for problems encountered while using the Kount Access API.
 	 *
@@ -82,4 +96,18 @@ public class AccessException extends Exception {
 	public AccessErrorType getAccessErrorType() {
 		return this.error;
 	}
+
+	/**
+	 * Returns the measurements of the call that failed, including the time spent in each {@link AccessPhase}, to
+	 * tell e.g. a pool exhaustion from a slow server.
+	 *
+	 * @return The call, or null if the error didn't happen during a call to the API (e.g. invalid parameters).
+	 */
+	public AccessCall getCall() {
+		return this.call;
+	}
+
+	void setCall(AccessCall call) {
+		this.call = call;
+	}
 }
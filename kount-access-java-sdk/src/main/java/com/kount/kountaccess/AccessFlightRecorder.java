@@ -0,0 +1,53 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+/**
+ * Java Flight Recorder events of the SDK. This is the Java 7 version, recording nothing; on Java 11 and later the
+ * version in {@code META-INF/versions/11} of the multi-release JAR emits the events.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class AccessFlightRecorder {
+
+	private AccessFlightRecorder() {
+	}
+
+	/**
+	 * Starts the event of a call.
+	 *
+	 * @return the event, or null if not recording
+	 */
+	static Object beginCall() {
+		return null;
+	}
+
+	/**
+	 * Ends the event of a call.
+	 */
+	static void commitCall(Object event, AccessCall call) {
+	}
+
+	/**
+	 * Starts the event of a wait for a pooled connection.
+	 *
+	 * @return the event, or null if not recording
+	 */
+	static Object beginPoolLease() {
+		return null;
+	}
+
+	/**
+	 * Ends the event of a wait for a pooled connection.
+	 */
+	static void commitPoolLease(Object event, String route, boolean leased) {
+	}
+
+	/**
+	 * Records a lookup of a prefetched info response.
+	 */
+	static void prefetchLookup(int infoFlag, boolean hit) {
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import org.apache.http.HttpRequest;
+
+/**
+ * Interceptor around every call the {@link AccessSdk} makes to the Kount Access API, e.g. to open a tracing span per
+ * call and propagate the trace context in the request headers. Interceptors are called on the calling thread, in the
+ * order they were added before the request, and in the reverse order after the call.
+ * <p>
+ * An interceptor that throws a {@link RuntimeException} is logged and ignored, it never fails the call.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ * @see AccessSdk#addInterceptor(AccessInterceptor)
+ */
+public interface AccessInterceptor {
+
+	/**
+	 * Called before the request is sent. Headers added to the request (e.g. trace context) are sent with it.
+	 *
+	 * @param call
+	 *            the call, with its endpoint and merchant
+	 * @param request
+	 *            the request about to be sent
+	 * @return state to pass to {@link #afterResponse(AccessCall, Object)}, e.g. the span opened for the call, or null
+	 */
+	Object beforeRequest(AccessCall call, HttpRequest request);
+
+	/**
+	 * Called once the call succeeded or failed, with its measurements and the response_id of the response.
+	 *
+	 * @param call
+	 *            the completed call
+	 * @param state
+	 *            the value returned by {@link #beforeRequest(AccessCall, HttpRequest)}
+	 */
+	void afterResponse(AccessCall call, Object state);
+}
@@ -0,0 +1,34 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+/**
+ * Listener for the calls the {@link AccessSdk} makes to the Kount Access API. The listener is called on the calling
+ * thread, so implementations must be thread-safe and should be cheap.
+ * <p>
+ * {@link HistogramAccessMetrics} is the default implementation, keeping per-endpoint latency histograms and counters
+ * in memory.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ * @see AccessSdk#setMetrics(AccessMetrics)
+ */
+public interface AccessMetrics {
+
+	/**
+	 * Called before the request is sent.
+	 *
+	 * @param endpoint
+	 *            the endpoint being called
+	 */
+	void callStarted(AccessEndpoint endpoint);
+
+	/**
+	 * Called once the call succeeded or failed.
+	 *
+	 * @param call
+	 *            the measurements of the call
+	 */
+	void callCompleted(AccessCall call);
+}
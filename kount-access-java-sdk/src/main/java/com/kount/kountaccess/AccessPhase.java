@@ -0,0 +1,47 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+/**
+ * The phases of a call to the Kount Access API, timed separately in {@link AccessCall#getPhaseNanos(AccessPhase)}.
+ * The connection phases (DNS, connect and TLS) only take time when a new connection is opened; a kept-alive pooled
+ * connection skips them.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public enum AccessPhase {
+	/**
+	 * Waiting in the dispatch queue of the SDK, see {@link AccessSdkBuilder#fairQueueing(int)}.
+	 */
+	QUEUE,
+	/**
+	 * Waiting for a connection from the pool.
+	 */
+	POOL_LEASE,
+	/**
+	 * Resolving the host name.
+	 */
+	DNS,
+	/**
+	 * Opening the TCP connection.
+	 */
+	CONNECT,
+	/**
+	 * The TLS handshake.
+	 */
+	TLS,
+	/**
+	 * Sending the request and waiting for the response headers, i.e. the time spent by the network and the server.
+	 */
+	SERVER,
+	/**
+	 * Reading the response body.
+	 */
+	BODY_READ,
+	/**
+	 * Parsing the JSON response.
+	 */
+	PARSE
+}
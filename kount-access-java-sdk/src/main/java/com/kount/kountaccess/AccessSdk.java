@@ -1,28 +1,62 @@
 package com.kount.kountaccess;
 
+import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URI;
 import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
 import org.apache.http.NameValuePair;
 import org.apache.http.ParseException;
 import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.DnsResolver;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -49,14 +83,14 @@ import net.sf.json.JSONObject;
  *
  * @version 2.1.0
  */
-public class AccessSdk {
+public class AccessSdk implements AutoCloseable {
 	private static final Logger logger = LogManager.getLogger(AccessSdk.class);
 
 	/**
 	 * This is the default version of the API Responses that this SDK will request. Future versions are intended to be
 	 * compatible with this version of the SDK.
 	 */
-	public final String DEFAULT_API_VERSION = "0400";
+	public final String DEFAULT_API_VERSION = AccessSdkConfig.DEFAULT_VERSION;
 
 	/**
 	 * Trusted state - trusted.
@@ -73,26 +107,101 @@ public class AccessSdk {
 	 */
 	public static final String TRUSTED_STATE_BANNED = "banned";
 
+	/**
+	 * Info endpoint data sets that don't need the user's credentials and can be requested ahead of time.
+	 */
+	private static final int PREFETCHABLE_DATA_SETS = InfoEndpointDataSet.INFO | InfoEndpointDataSet.TRUSTED;
+
+	/**
+	 * Maximum number of pooled connections to the Access host.
+	 */
+	static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/**
+	 * How long {@link #close()} waits for the calls in flight and the queued work to complete.
+	 */
+	public static final long DEFAULT_CLOSE_TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * Number of synthetic request-encode/parse cycles run by {@link #warmUp(int)}
+	 */
+	static final int WARM_UP_CYCLES = 2000;
+
+	private static final String WARM_UP_RESPONSE = "{\"device\":{\"id\":\"7041cca3e5f94391a7a02316b0a8f384\","
+			+ "\"ipAddress\":\"10.0.0.1\",\"ipGeo\":\"BG\",\"mobile\":0,\"proxy\":0,\"tor\":0,\"region\":\"53\","
+			+ "\"country\":\"BG\",\"geoLat\":43.8564,\"geoLong\":25.9708},\"decision\":{\"errors\":[],"
+			+ "\"warnings\":[],\"reply\":{\"ruleEvents\":{\"decision\":\"A\",\"total\":0,\"ruleEvents\":null}}},"
+			+ "\"trusted\":{\"state\":\"trusted\"},\"velocity\":{\"account\":{\"dlh\":1,\"dlm\":1,\"iplh\":1,"
+			+ "\"iplm\":1,\"plh\":1,\"plm\":1,\"ulh\":1,\"ulm\":1}},"
+			+ "\"response_id\":\"baa5211cdfbf460c967bd81d574ae353\"}";
+
+	/**
+	 * JMX domain of the MBeans.
+	 */
+	static final String MBEAN_DOMAIN = "com.kount.kountaccess";
+
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	/**
+	 * Metrics listener used until one is set, ignoring all the calls.
+	 */
+	private static final AccessMetrics NO_METRICS = new AccessMetrics() {
+		@Override
+		public void callStarted(AccessEndpoint endpoint) {
+		}
+
+		@Override
+		public void callCompleted(AccessCall call) {
+		}
+	};
+
+	private static final AccessInterceptor[] NO_INTERCEPTORS = new AccessInterceptor[0];
+
+	/**
+	 * Name of the devicetrustbydevice endpoint, as recorded in the trust journal.
+	 */
+	private static final String DEVICE_TRUST_BY_DEVICE = "devicetrustbydevice";
+
+	/**
+	 * Name of the devicetrustbysession endpoint, as recorded in the trust journal.
+	 */
+	private static final String DEVICE_TRUST_BY_SESSION = "devicetrustbysession";
 
 	/**
 	 * Merchant's ID
 	 */
-	private int merchantId;
+	private final int merchantId;
 
 	/**
 	 * Merchants API Key
 	 */
-	private String apiKey;
+	private final String apiKey;
 
 	/**
 	 * Array of alphanum characters
 	 */
 	protected final static char[] hexArray = "0123456789abcdef".toCharArray();
 
+	/**
+	 * One digest per thread: {@link MessageDigest#getInstance(String)} looks up the security providers on every call.
+	 * digest() resets it for the next value.
+	 */
+	private static final ThreadLocal<MessageDigest> SHA_256 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				logger.warn("Could not hash parameter value", e);
+				return null;
+			}
+		}
+	};
+
 	/**
 	 * Version of the API response to use.
 	 */
-	private String version;
+	private final String version;
 
 	/**
 	 * Velocity endpoint
@@ -135,12 +244,141 @@ public class AccessSdk {
 	private final String infoEndpoint;
 
 	/**
-	 * Authorization header
+	 * Authorization header, the same for every call
+	 */
+	private final String authorizationHeader;
+
+	/**
+	 * Configuration this instance was built with
+	 */
+	private final AccessSdkConfig config;
+
+	/**
+	 * Info endpoint responses requested ahead of time
+	 */
+	private final PrefetchCache prefetchCache;
+
+	/**
+	 * Executor for asynchronous requests, given by the configuration or created on first use
+	 */
+	private volatile ExecutorService executor;
+
+	/**
+	 * Pooled connections to the Access host, created on first use
+	 */
+	private PoolingHttpClientConnectionManager connectionManager;
+
+	/**
+	 * Keeps pooled connections open through the idle periods, if configured
+	 */
+	private ConnectionKeepAlive keepAlive;
+
+	/**
+	 * Cache of the addresses of the Access hosts, if configured
+	 */
+	private CachingDnsResolver dnsCache;
+
+	/**
+	 * HTTP client shared by all the calls, given by the configuration or created on first use
+	 */
+	private volatile CloseableHttpClient httpClient;
+
+	/**
+	 * Write-behind queue for the trust updates, if enabled
+	 */
+	private volatile TrustWriteBehind trustWriteBehind;
+
+	/**
+	 * Listener for the calls to the API
+	 */
+	private volatile AccessMetrics metrics = NO_METRICS;
+
+	/**
+	 * Interceptors around the calls to the API, replaced on every change
+	 */
+	private volatile AccessInterceptor[] interceptors = NO_INTERCEPTORS;
+
+	/**
+	 * Maximum number of pooled connections, can be changed at runtime
+	 */
+	private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	/**
+	 * Timeouts of the requests, can be changed at runtime; the ones of the root instance for a view
+	 */
+	private volatile RequestConfig requestConfig = RequestConfig.DEFAULT;
+
+	/**
+	 * Requests in flight of the bulk updates and batch lookups without explicit concurrency; the one of the root
+	 * instance for a view
+	 */
+	private volatile int defaultConcurrency = BoundedParallel.DEFAULT_CONCURRENCY;
+
+	/**
+	 * Name of the registered MBean, if any
+	 */
+	private ObjectName mbeanName;
+
+	/**
+	 * Instance sharing its connection pool and executor with this tenant view, null if this is not a tenant view
+	 */
+	private final AccessSdk parent;
+
+	/**
+	 * Dispatch queue of the requests, shared with the views; null if the requests are sent directly
+	 */
+	private final FairScheduler scheduler;
+
+	/**
+	 * Picks the host of each request among the configured ones, shared with the views; null for a single host
+	 */
+	private final HostSelector hostSelector;
+
+	/**
+	 * Priority class of the calls in the dispatch queue
+	 */
+	private final CallOptions.Priority priority;
+
+	/**
+	 * Fairness tag of the calls in the dispatch queue
+	 */
+	private final String dispatchTag;
+
+	/**
+	 * Deadline of the calls in milliseconds since the epoch, 0 if none
+	 */
+	private final long deadlineMillis;
+
+	/**
+	 * Calls in flight plus the bulk updates, batch lookups and background work already accepted, drained on close
+	 */
+	private final AtomicInteger activeWork = new AtomicInteger();
+
+	private final Object idle = new Object();
+
+	/**
+	 * Set once {@link #close(long, TimeUnit)} starts: new calls are rejected, accepted work is drained
+	 */
+	private volatile boolean closing;
+
+	/**
+	 * Set once the drain found no work active: a call starting later, having passed the checks before the close, is
+	 * rejected since the pool may be shut down already
+	 */
+	private volatile boolean quiescent;
+
+	/**
+	 * Set once the drain is over: no call is made anymore
 	 */
-	private String authorizationHeader;
+	private volatile boolean closed;
+
+	private volatile boolean drained;
+
+	private final CountDownLatch terminated = new CountDownLatch(1);
 
 	/**
-	 * Creates an instance of the AccessSdk associated with a specific host and merchant.
+	 * Creates an instance of the AccessSdk associated with a specific host and merchant. Shortcut of
+	 * {@code AccessSdk.builder().host(host).merchantId(merchantId).apiKey(apiKey).build()}.
 	 *
 	 * @param host
 	 *            FQDN of the host that AccessSdk will communicate with.
@@ -152,65 +390,291 @@ public class AccessSdk {
 	 *             Thrown if any of the values are invalid. ({@link AccessErrorType#INVALID_DATA}).
 	 */
 	public AccessSdk(String host, int merchantId, String apiKey) throws AccessException {
-		if ((host == null) || host.isEmpty()) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing host");
-		}
+		this(builder().host(host).merchantId(merchantId).apiKey(apiKey).buildConfig());
+	}
 
-		if (apiKey == null) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing apiKey");
-		}
+	/**
+	 * Creates instance of the AccessSdk, allowing the client to specify version of responses to request. Shortcut of
+	 * {@code AccessSdk.builder().host(host).merchantId(merchantId).apiKey(apiKey).version(version).build()}.
+	 *
+	 * @param host
+	 *            FQDN of the host that AccessSdk will communicate with.
+	 * @param merchantId
+	 *            Merchant ID (6 digit value).
+	 * @param apiKey
+	 *            The API Key for the merchant.
+	 * @param version
+	 *            The version of the API response to return.
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid.
+	 */
+	public AccessSdk(String host, int merchantId, String apiKey, String version) throws AccessException {
+		this(builder().host(host).merchantId(merchantId).apiKey(apiKey).version(version).buildConfig());
+	}
 
-		if (apiKey.trim().isEmpty()) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid apiKey(" + apiKey + ")");
-		}
+	/**
+	 * Creates an instance of the AccessSdk from a configuration built (and validated) with {@link #builder()}. The
+	 * same configuration can be used for any number of instances.
+	 *
+	 * @param config
+	 *            The configuration.
+	 * @throws AccessException
+	 *             Thrown if the trust write-behind journal of the configuration can't be opened.
+	 */
+	public AccessSdk(AccessSdkConfig config) throws AccessException {
+		this(config, null, CallOptions.DEFAULT, null);
+	}
 
-		if ((merchantId < 100000) || (merchantId > 999999)) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid merchantId");
+	/**
+	 * @param prefetchCache
+	 *            Prefetch cache shared with another instance of the same merchant, or null for a new one.
+	 */
+	private AccessSdk(AccessSdkConfig config, AccessSdk parent, CallOptions options, PrefetchCache prefetchCache)
+			throws AccessException {
+		if (config == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing config");
+		}
+		String host = config.getHost();
+		this.config = config;
+		this.parent = parent;
+		if (parent != null) {
+			this.scheduler = parent.scheduler;
+		} else if (config.getAdaptiveMaxLimit() > 0) {
+			int initialLimit = (config.getFairQueueMaxInFlight() > 0) ? config.getFairQueueMaxInFlight()
+					: config.getMaxConnections();
+			this.scheduler = new FairScheduler(initialLimit, config.getTagWeights(),
+					new GradientLimit(config.getAdaptiveMinLimit(), config.getAdaptiveMaxLimit(), initialLimit));
+		} else if (config.getFairQueueMaxInFlight() > 0) {
+			this.scheduler = new FairScheduler(config.getFairQueueMaxInFlight(), config.getTagWeights());
+		} else {
+			this.scheduler = null;
 		}
+		if (parent != null) {
+			this.hostSelector = parent.hostSelector;
+		} else {
+			this.hostSelector = (config.getHosts().size() > 1) ? new HostSelector(config.getHosts()) : null;
+		}
+		this.priority = options.getPriority();
+		this.dispatchTag = (options.getTag() != null) ? options.getTag() : String.valueOf(config.getMerchantId());
+		this.deadlineMillis = options.getDeadlineMillis();
 
 		// initialize the Access SDK endpoints
 		this.velocityEndpoint = "https://" + host + "/api/velocity";
 		this.deviceEndpoint = "https://" + host + "/api/device";
 		this.decisionEndpoint = "https://" + host + "/api/decision";
-		this.deviceTrustByDeviceEndpoint = "https://" + host + "/api/devicetrustbydevice";
-		this.deviceTrustBySessionEndpoint = "https://" + host + "/api/devicetrustbysession";
+		this.deviceTrustByDeviceEndpoint = "https://" + host + "/api/" + DEVICE_TRUST_BY_DEVICE;
+		this.deviceTrustBySessionEndpoint = "https://" + host + "/api/" + DEVICE_TRUST_BY_SESSION;
 		this.getDevicesEndpoint = "https://" + host + "/api/getdevices";
 		this.getUniquesEndpoint = "https://" + host + "/api/getuniques";
 		this.infoEndpoint = "https://" + host + "/api/info";
 
-		this.merchantId = merchantId;
-		this.apiKey = apiKey;
-		this.version = DEFAULT_API_VERSION;
+		this.merchantId = config.getMerchantId();
+		this.apiKey = config.getApiKey();
+		this.version = config.getVersion();
+		this.authorizationHeader = "Basic "
+				+ Base64.encodeBase64String((merchantId + ":" + apiKey).getBytes(StandardCharsets.UTF_8));
+
+		this.prefetchCache = (prefetchCache != null) ? prefetchCache
+				: new PrefetchCache(config.getPrefetchTtlMillis(), config.getPrefetchMaxEntries());
+		this.executor = config.getExecutor();
+		this.httpClient = config.getHttpClient();
+		this.maxConnections = config.getMaxConnections();
+		this.defaultConcurrency = config.getDefaultConcurrency();
+		this.requestConfig = RequestConfig.custom().setConnectTimeout(config.getConnectTimeoutMillis())
+				.setSocketTimeout(config.getSocketTimeoutMillis())
+				.setConnectionRequestTimeout(config.getConnectionRequestTimeoutMillis())
+				.setContentCompressionEnabled(config.isContentCompression()).build();
+		setMetrics(config.getMetrics());
+		if (!config.getInterceptors().isEmpty()) {
+			this.interceptors = config.getInterceptors().toArray(new AccessInterceptor[0]);
+		}
+		if (config.isTrustWriteBehind()) {
+			enableTrustWriteBehind(config.getTrustJournal(), config.getTrustQueueCapacity(), config.getTrustWorkers(),
+					config.isCollapseTrustUpdates());
+		}
+		if (config.getKeepAliveConnections() > 0) {
+			// the pool and its keep-alive start now, not on the first call
+			getHttpClient();
+		}
 
-		logger.info("Access SDK using merchantId = " + this.merchantId + ", host = " + host + ", version = " + version
-				+ " and API key starting with " + apiKey.substring(0, 4));
-		logger.debug("velocity endpoint: " + velocityEndpoint);
-		logger.debug("decision endpoint: " + decisionEndpoint);
-		logger.debug("device endpoint: " + deviceEndpoint);
-		logger.debug("devicetrustbydevice endpoint: " + deviceTrustByDeviceEndpoint);
-		logger.debug("devicetrustbysession endpoint: " + deviceTrustBySessionEndpoint);
-		logger.debug("getdevices endpoint: " + getDevicesEndpoint);
-		logger.debug("getuniques endpoint: " + getUniquesEndpoint);
-		logger.debug("info endpoint: " + infoEndpoint);
+		if (parent != null) {
+			// views can be created per call
+			logger.debug("Access SDK view using merchantId = {}, options = {}", this.merchantId, options);
+			return;
+		}
+		logger.info("Access SDK using merchantId = {}, host = {}, version = {}", this.merchantId, host, version);
+		logger.debug("Access SDK config: {}", config);
+		logger.debug("velocity endpoint: {}", velocityEndpoint);
+		logger.debug("decision endpoint: {}", decisionEndpoint);
+		logger.debug("device endpoint: {}", deviceEndpoint);
+		logger.debug("devicetrustbydevice endpoint: {}", deviceTrustByDeviceEndpoint);
+		logger.debug("devicetrustbysession endpoint: {}", deviceTrustBySessionEndpoint);
+		logger.debug("getdevices endpoint: {}", getDevicesEndpoint);
+		logger.debug("getuniques endpoint: {}", getUniquesEndpoint);
+		logger.debug("info endpoint: {}", infoEndpoint);
 	}
 
 	/**
-	 * Creates instance of the AccessSdk, allowing the client to specify version of responses to request.
+	 * Starts the configuration of an instance: host, credentials, connection pool, timeouts, compression, TLS,
+	 * transport, executor, caching, metrics and interceptors.
+	 *
+	 * @return a new builder.
+	 */
+	public static AccessSdkBuilder builder() {
+		return new AccessSdkBuilder();
+	}
+
+	/**
+	 * @return the configuration this instance was built with. The pool size, timeouts and default concurrency can
+	 *         since have been changed through JMX.
+	 */
+	public AccessSdkConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * Creates a view of this SDK for another merchant account, e.g. one per tenant of a platform. The view makes its
+	 * calls with the merchant ID and API key of the tenant (its Authorization header computed once), over the
+	 * connection pool, executor, timeouts and default concurrency of this instance (the changes made at runtime
+	 * included), with its current metrics listener and interceptors. The merchant ID of every call is available to the
+	 * listener and interceptors through {@link AccessCall}.
+	 * <p>
+	 * Create each view once and keep it: a view is cheap, but it has its own prefetch cache. Trust updates of a view
+	 * are sent synchronously even in the write-behind mode, whose journal belongs to this instance. Closing a view
+	 * only rejects its own calls; closing this instance rejects the calls of all its views and waits for the ones in
+	 * flight before the pool is shut down.
 	 *
-	 * @param host
-	 *            FQDN of the host that AccessSdk will communicate with.
 	 * @param merchantId
-	 *            Merchant ID (6 digit value).
+	 *            Merchant ID of the tenant (6 digit value).
 	 * @param apiKey
-	 *            The API Key for the merchant.
-	 * @param version
-	 *            The version of the API response to return.
+	 *            The API Key of the tenant.
+	 * @return the view of the tenant.
 	 * @throws AccessException
-	 *             Thrown if any of the values are invalid.
+	 *             Thrown if the merchant ID or API key are invalid ({@link AccessErrorType#INVALID_DATA}) or this
+	 *             instance is closed ({@link AccessErrorType#REJECTED}).
 	 */
-	public AccessSdk(String host, int merchantId, String apiKey, String version) throws AccessException {
-		this(host, merchantId, apiKey);
-		this.version = version;
+	public AccessSdk forTenant(int merchantId, String apiKey) throws AccessException {
+		return view(merchantId, apiKey, CallOptions.DEFAULT.withPriority(priority).withDeadline(deadlineMillis));
+	}
+
+	/**
+	 * Creates a view of this SDK making its calls with other options, e.g. as batch calls so a bulk export doesn't
+	 * delay the interactive calls, or with the deadline of a login request. The view shares everything with this SDK,
+	 * as a tenant view does (see {@link #forTenant(int, String)}), its prefetch cache included, and is cheap enough to
+	 * be created per call. The priority and tag only matter with the dispatch queue enabled by
+	 * {@link AccessSdkBuilder#fairQueueing(int)}.
+	 *
+	 * @param options
+	 *            The options of the calls.
+	 * @return the view.
+	 * @throws AccessException
+	 *             Thrown if the options are missing ({@link AccessErrorType#INVALID_DATA}) or this instance is closed
+	 *             ({@link AccessErrorType#REJECTED}).
+	 */
+	public AccessSdk withOptions(CallOptions options) throws AccessException {
+		if (options == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing options");
+		}
+		return view(merchantId, apiKey, options);
+	}
+
+	private AccessSdk view(int merchantId, String apiKey, CallOptions options) throws AccessException {
+		checkOpen();
+		AccessSdk root = (parent != null) ? parent : this;
+		AccessSdkBuilder builder = new AccessSdkBuilder(config).merchantId(merchantId).apiKey(apiKey)
+				.httpClient(root.getHttpClient()).executor(root.getExecutor()).metrics(getMetrics());
+		builder.interceptors.clear();
+		builder.interceptors.addAll(Arrays.asList(interceptors));
+		builder.trustWriteBehind = false;
+		builder.warmUpConnections = 0;
+		builder.keepAliveConnections = 0;
+		AccessSdk view = new AccessSdk(builder.buildConfig(), root, options,
+				(merchantId == this.merchantId) ? prefetchCache : null);
+		return view;
+	}
+
+	/**
+	 * @return the options of the calls of this instance.
+	 */
+	public CallOptions getCallOptions() {
+		return CallOptions.DEFAULT.withPriority(priority).withTag(dispatchTag).withDeadline(deadlineMillis);
+	}
+
+	/**
+	 * Prepares the SDK for the first calls, e.g. before a pod reports ready: opens pooled connections to the Access
+	 * host (DNS, TCP and TLS, the first handshake caching the TLS session the others resume), and runs synthetic
+	 * request-encode/parse cycles of the calls so their code is compiled by the JIT. No request is sent to the
+	 * server. With a custom HTTP client (see {@link AccessSdkBuilder#httpClient(CloseableHttpClient)}) only the code
+	 * is warmed up.
+	 *
+	 * @param connections
+	 *            The number of connections to open, at most the pool size.
+	 * @return the number of connections opened.
+	 * @throws AccessException
+	 *             Thrown if none of the connections could be opened ({@link AccessErrorType#NETWORK_ERROR}) or the
+	 *             number is invalid.
+	 */
+	public int warmUp(int connections) throws AccessException {
+		checkOpen();
+		if (connections < 0) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid connections (" + connections + ").  Must be a positive integer or 0.");
+		}
+		long start = System.nanoTime();
+		warmUpCode(WARM_UP_CYCLES);
+		logger.debug("ran {} warm-up cycles in {}ms", WARM_UP_CYCLES,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+		getHttpClient();
+		PoolingHttpClientConnectionManager manager;
+		synchronized (this) {
+			manager = connectionManager;
+		}
+		if ((manager == null) || (connections == 0)) {
+			return 0;
+		}
+		beginWork();
+		try {
+			int opened = ConnectionWarmUp.open(manager, ConnectionWarmUp.route(infoEndpoint),
+					Math.min(connections, maxConnections), warmUpTimeout(), getExecutor());
+			logger.info("opened {} connections to the Access host in {}ms", opened,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+			return opened;
+		} finally {
+			endWork();
+		}
+	}
+
+	/**
+	 * @return the timeout to open a connection ahead of the calls.
+	 */
+	private int warmUpTimeout() {
+		int timeout = getRequestConfig().getConnectTimeout();
+		return (timeout > 0) ? timeout : ConnectionWarmUp.DEFAULT_TIMEOUT_MILLIS;
+	}
+
+	/**
+	 * Runs the request building, form encoding and response parsing of the calls on synthetic data.
+	 */
+	private void warmUpCode(int cycles) throws AccessException {
+		int infoFlag = InfoEndpointDataSet.INFO | InfoEndpointDataSet.VELOCITY | InfoEndpointDataSet.DECISION
+				| InfoEndpointDataSet.TRUSTED | InfoEndpointDataSet.BEHAVIOSEC;
+		long checksum = 0;
+		for (int i = 0; i < cycles; i++) {
+			String session = String.format("%032x", i);
+			String uniq = "warmup" + i + "@example.com";
+			verifySessionId(session);
+			verifyInfoParams(infoFlag, uniq, uniq, "password");
+			List<NameValuePair> parameters = createInfoParameters(infoFlag, session, uniq, uniq, "password", null);
+			checksum += new UrlEncodedFormEntity(parameters, StandardCharsets.UTF_8).getContentLength();
+			checksum += createQueryUrl(getDevicesEndpoint, "uniq", uniq, null).length();
+			JSONObject response = processJSONEntity(WARM_UP_RESPONSE);
+			checksum += response.getJSONObject("device").getString("id").length();
+		}
+		if (checksum == 0) {
+			// keeps the JIT from dropping the loop
+			logger.trace("warm-up checksum {}", checksum);
+		}
 	}
 
 	/**
@@ -248,20 +712,17 @@ public class AccessSdk {
 	 */
 	public JSONObject getVelocity(String session, String username, String password,
 			Map<String, String> additionalParameters) throws AccessException {
-
+		checkOpen();
 		verifySessionId(session);
 
 		List<NameValuePair> parameters = createRequestParameters(session, username, password, additionalParameters);
 
-		logger.debug("velocity request: host = " + velocityEndpoint + ", parameters = " + parameters.toString());
-		long startTime = System.currentTimeMillis();
-		String response = this.postRequest(velocityEndpoint, parameters);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime) + ", response = " + response);
-		if (response != null) {
-			return processJSONEntity(response);
+		if (logger.isDebugEnabled()) {
+			logger.debug("velocity request: host = {}, parameters = {}", velocityEndpoint,
+					LogRedaction.parameters(parameters));
 		}
-
-		return null;
+		JSONObject response = this.postRequest(AccessEndpoint.VELOCITY, velocityEndpoint, parameters);
+		return response;
 	}
 
 	/**
@@ -289,32 +750,27 @@ public class AccessSdk {
 	 *             Thrown if any of the parameter values are invalid or there was a problem getting a response.
 	 */
 	public JSONObject getDevice(String session, Map<String, String> additionalParameters) throws AccessException {
-
+		checkOpen();
 		verifySessionId(session);
 
-		StringBuilder parameters = new StringBuilder("?");
-		// version and session
-		parameters.append("v=").append(version).append("&s=").append(session);
-
-		// Add the additional parameters, if they exist.
-		if (additionalParameters != null) {
-			for (Map.Entry<String, String> entry : additionalParameters.entrySet()) {
-				parameters.append("&").append(entry.getKey()).append("=").append(entry.getValue());
+		if (additionalParameters == null) {
+			JSONObject info = getPrefetched(session, InfoEndpointDataSet.INFO, null);
+			if (info != null) {
+				JSONObject result = new JSONObject();
+				result.put("device", info.get("device"));
+				result.put("response_id", info.get("response_id"));
+				return result;
 			}
 		}
 
-		String urlString = deviceEndpoint + parameters;
-
-		logger.debug("device info request: url = " + urlString);
+		String urlString = createQueryUrl(deviceEndpoint, "s", session, additionalParameters);
 
-		long startTime = System.currentTimeMillis();
-		String response = this.getRequest(urlString);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime) + ", response = " + response);
-		if (response != null) {
-			return processJSONEntity(response);
+		if (logger.isDebugEnabled()) {
+			logger.debug("device info request: url = {}", LogRedaction.url(urlString));
 		}
 
-		return null;
+		JSONObject response = this.getRequest(AccessEndpoint.DEVICE, urlString);
+		return response;
 	}
 
 	/**
@@ -342,32 +798,22 @@ public class AccessSdk {
 	 *             Thrown if any of the parameter values are invalid or there was a problem getting a response.
 	 */
 	public JSONObject getDevices(String uniq, Map<String, String> additionalParameters) throws AccessException {
+		checkOpen();
+		return lookupDevices(uniq, additionalParameters);
+	}
+
+	private JSONObject lookupDevices(String uniq, Map<String, String> additionalParameters) throws AccessException {
 		if ((uniq == null) || uniq.isEmpty()) {
 			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing uniq.");
 		}
 
-		StringBuilder parameters = new StringBuilder("?");
-		// version and uniq
-		parameters.append("v=").append(version).append("&uniq=").append(uniq);
-
-		// Add the additional parameters, if they exist.
-		if (additionalParameters != null) {
-			for (Map.Entry<String, String> entry : additionalParameters.entrySet()) {
-				parameters.append("&").append(entry.getKey()).append("=").append(entry.getValue());
-			}
-		}
-
-		String urlString = getDevicesEndpoint + parameters;
+		String urlString = createQueryUrl(getDevicesEndpoint, "uniq", uniq, additionalParameters);
 
-		logger.debug("getdevices request: url = " + urlString);
-		long startTime = System.currentTimeMillis();
-		String response = this.getRequest(urlString);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime) + ", response = " + response);
-		if (response != null) {
-			return processJSONEntity(response);
+		if (logger.isDebugEnabled()) {
+			logger.debug("getdevices request: url = {}", LogRedaction.url(urlString));
 		}
-
-		return null;
+		JSONObject response = this.getRequest(AccessEndpoint.GET_DEVICES, urlString);
+		return response;
 	}
 
 	/**
@@ -405,27 +851,11 @@ public class AccessSdk {
 	 */
 	public void setDeviceTrustByDevice(String deviceId, String uniq, String trustedState,
 			Map<String, String> additionalParameters) throws AccessException {
-		if ((deviceId == null) || deviceId.isEmpty() || deviceId.trim().isEmpty()) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing deviceId.");
-		}
-		if ((uniq == null) || uniq.isEmpty() || uniq.trim().isEmpty()) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing uniq.");
-		}
-		verifyTrustedState(trustedState);
-
-		if (additionalParameters == null) {
-			additionalParameters = new HashMap<>();
-		}
-		additionalParameters.put("d", deviceId);
-		additionalParameters.put("uniq", uniq);
-		additionalParameters.put("ts", trustedState);
-
-		List<NameValuePair> parameters = createRequestParameters(null, null, null, additionalParameters);
-		logger.debug("devicetrustbydevice request: host = " + deviceTrustByDeviceEndpoint + ", parameters = "
-				+ parameters.toString());
-		long startTime = System.currentTimeMillis();
-		this.postRequest(deviceTrustByDeviceEndpoint, parameters);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime));
+		checkOpen();
+		List<NameValuePair> parameters = createTrustByDeviceParameters(deviceId, uniq, trustedState,
+				additionalParameters);
+		prefetchCache.evictTrusted(uniq);
+		submitTrustUpdate(DEVICE_TRUST_BY_DEVICE, parameters);
 	}
 
 	/**
@@ -463,31 +893,505 @@ public class AccessSdk {
 	 */
 	public void setDeviceTrustBySession(String session, String uniq, String trustedState,
 			Map<String, String> additionalParameters) throws AccessException {
-		verifySessionId(session);
-		if ((uniq == null) || uniq.isEmpty() || uniq.trim().isEmpty()) {
-			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing or empty uniq.");
-		}
-		verifyTrustedState(trustedState);
-
-		if (additionalParameters == null) {
-			additionalParameters = new HashMap<>();
-		}
-		additionalParameters.put("uniq", uniq);
-		additionalParameters.put("ts", trustedState);
-
-		List<NameValuePair> parameters = createRequestParameters(session, null, null, additionalParameters);
-		logger.debug("devicetrustbysession request: host = " + deviceTrustBySessionEndpoint + ", parameters = "
-				+ parameters.toString());
-		long startTime = System.currentTimeMillis();
-		this.postRequest(deviceTrustBySessionEndpoint, parameters);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime));
+		checkOpen();
+		List<NameValuePair> parameters = createTrustBySessionParameters(session, uniq, trustedState,
+				additionalParameters);
+		prefetchCache.evictSession(session);
+		submitTrustUpdate(DEVICE_TRUST_BY_SESSION, parameters);
 	}
 
 	/**
-	 * Gets the threshold decision and velocity data for the session's username and password.
+	 * Sets the trusted state of many devices at once (e.g. banning all the devices of a fraud ring). The updates are
+	 * sent directly, bypassing the write-behind mode, with at most 8 requests (by default, see
+	 * {@link AccessSdkMXBean#setDefaultConcurrency(int)}) in flight over pooled connections. A failing update doesn't
+	 * stop the others.
 	 *
-	 * @param session
-	 *            The Session ID generated for the Data Collector service.
+	 * @param updates
+	 *            The trusted state updates.
+	 * @return The error of every failed update, the error count and the throughput.
+	 * @throws AccessException
+	 *             Thrown if the updates are missing or the calling thread was interrupted.
+	 */
+	public BulkTrustResult setDeviceTrustBulk(Collection<TrustUpdate> updates) throws AccessException {
+		return setDeviceTrustBulk(updates, getDefaultConcurrency());
+	}
+
+	/**
+	 * Sets the trusted state of many devices at once. See {@link #setDeviceTrustBulk(Collection)}.
+	 *
+	 * @param updates
+	 *            The trusted state updates.
+	 * @param maxConcurrency
+	 *            The maximum number of requests in flight.
+	 * @return The error of every failed update, the error count and the throughput.
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid or the calling thread was interrupted.
+	 */
+	public BulkTrustResult setDeviceTrustBulk(Collection<TrustUpdate> updates, int maxConcurrency)
+			throws AccessException {
+		checkOpen();
+		if (updates == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing updates.");
+		}
+		verifyConcurrency(maxConcurrency);
+
+		beginWork();
+		try {
+			return sendTrustBulk(updates, maxConcurrency);
+		} finally {
+			endWork();
+		}
+	}
+
+	private BulkTrustResult sendTrustBulk(Collection<TrustUpdate> updates, int maxConcurrency)
+			throws AccessException {
+		final List<TrustUpdate> list = new ArrayList<>(updates);
+		long startTime = System.currentTimeMillis();
+		AccessException[] errors;
+		try {
+			errors = BoundedParallel.run(getExecutor(), list.size(), maxConcurrency, new BoundedParallel.Call() {
+				@Override
+				public void run(int index) throws AccessException {
+					TrustUpdate update = list.get(index);
+					if (update == null) {
+						throw new AccessException(AccessErrorType.INVALID_DATA, "Missing update.");
+					}
+					if (update.isBySession()) {
+						List<NameValuePair> parameters = createTrustBySessionParameters(update.getSession(),
+								update.getUniq(), update.getTrustedState(), null);
+						prefetchCache.evictSession(update.getSession());
+						postTrustUpdate(DEVICE_TRUST_BY_SESSION, parameters);
+					} else {
+						List<NameValuePair> parameters = createTrustByDeviceParameters(update.getDeviceId(),
+								update.getUniq(), update.getTrustedState(), null);
+						prefetchCache.evictTrusted(update.getUniq());
+						postTrustUpdate(DEVICE_TRUST_BY_DEVICE, parameters);
+					}
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Interrupted while sending trust updates", e);
+		}
+		BulkTrustResult result = new BulkTrustResult(list, errors, System.currentTimeMillis() - startTime);
+		logger.debug("bulk trust update: {}", result);
+		return result;
+	}
+
+	/**
+	 * Starts setting the trusted state of many devices in the background. See {@link #setDeviceTrustBulk(Collection)}.
+	 *
+	 * @param updates
+	 *            The trusted state updates.
+	 * @param maxConcurrency
+	 *            The maximum number of requests in flight.
+	 * @return The pending result. {@link Future#get()} throws an {@link ExecutionException} caused by an
+	 *         {@link AccessException} if the run could not complete.
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid.
+	 */
+	public Future<BulkTrustResult> setDeviceTrustBulkAsync(final Collection<TrustUpdate> updates,
+			final int maxConcurrency) throws AccessException {
+		checkOpen();
+		if (updates == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing updates.");
+		}
+		verifyConcurrency(maxConcurrency);
+		return submitWork(new Callable<BulkTrustResult>() {
+			@Override
+			public BulkTrustResult call() throws AccessException {
+				return sendTrustBulk(updates, maxConcurrency);
+			}
+		});
+	}
+
+	/**
+	 * Enables the asynchronous write-behind mode for the trust updates. Once enabled,
+	 * {@link #setDeviceTrustByDevice(String, String, String)} and
+	 * {@link #setDeviceTrustBySession(String, String, String)} only validate and queue the update, and background
+	 * workers send it, retrying network errors, 429 and 5xx responses. Updates for the same device (or session) and
+	 * uniq are sent in order. If the queue is full, the caller waits for room.
+	 * <p>
+	 * When a journal file is given, queued updates are also recorded in it (memory-mapped), so updates still pending
+	 * when the process stops are sent when the write-behind mode is enabled again with the same journal.
+	 *
+	 * @param journal
+	 *            The journal file, or null if the queued updates don't have to survive a restart.
+	 * @throws AccessException
+	 *             Thrown if the write-behind mode is already enabled or the journal can't be opened.
+	 */
+	public void enableTrustWriteBehind(File journal) throws AccessException {
+		enableTrustWriteBehind(journal, TrustWriteBehind.DEFAULT_CAPACITY, TrustWriteBehind.DEFAULT_WORKERS, false);
+	}
+
+	/**
+	 * Enables the asynchronous write-behind mode for the trust updates. See {@link #enableTrustWriteBehind(File)}.
+	 *
+	 * @param journal
+	 *            The journal file, or null if the queued updates don't have to survive a restart.
+	 * @param queueCapacity
+	 *            The maximum number of queued updates.
+	 * @param workers
+	 *            The number of background workers sending the updates.
+	 * @param collapseUpdates
+	 *            If true, an update replaces the not yet sent updates for the same device (or session) and uniq, so
+	 *            only the latest trusted state is sent (last write wins).
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid, the write-behind mode is already enabled or the journal
+	 *             can't be opened.
+	 */
+	public synchronized void enableTrustWriteBehind(File journal, int queueCapacity, int workers,
+			boolean collapseUpdates) throws AccessException {
+		if ((queueCapacity < 1) || (workers < 1)) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid queueCapacity (" + queueCapacity + ") or workers (" + workers + ").");
+		}
+		if (trustWriteBehind != null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Trust write-behind is already enabled.");
+		}
+		try {
+			trustWriteBehind = new TrustWriteBehind(new TrustWriteBehind.Sender() {
+				@Override
+				public void send(String endpoint, List<NameValuePair> parameters) throws AccessException {
+					postTrustUpdate(endpoint, parameters);
+				}
+			}, journal, queueCapacity, workers, TrustWriteBehind.DEFAULT_MAX_RETRIES, collapseUpdates);
+		} catch (IOException e) {
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Unable to open trust journal " + journal, e);
+		}
+	}
+
+	/**
+	 * Waits until the trust updates queued in the write-behind mode are sent (or given up after retries).
+	 *
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return true if all the queued updates are sent, false if the timeout elapsed first.
+	 * @throws InterruptedException
+	 *             Thrown if interrupted while waiting.
+	 */
+	public boolean flushTrustUpdates(long timeout, TimeUnit unit) throws InterruptedException {
+		TrustWriteBehind writeBehind = trustWriteBehind;
+		return (writeBehind == null) || writeBehind.flush(timeout, unit);
+	}
+
+	/**
+	 * Sets the listener notified of every call to the API, e.g. a {@link HistogramAccessMetrics}. By default the calls
+	 * are not measured.
+	 *
+	 * @param metrics
+	 *            The listener, or null to stop measuring the calls.
+	 */
+	public void setMetrics(AccessMetrics metrics) {
+		this.metrics = (metrics != null) ? metrics : NO_METRICS;
+	}
+
+	/**
+	 * @return the listener notified of every call to the API, or null if none is set.
+	 */
+	public AccessMetrics getMetrics() {
+		AccessMetrics result = metrics;
+		return (result != NO_METRICS) ? result : null;
+	}
+
+	/**
+	 * Adds an interceptor around every call to the API, e.g. to open a tracing span per call. Interceptors are called
+	 * in the order they were added before the request, and in the reverse order after the call.
+	 *
+	 * @param interceptor
+	 *            The interceptor.
+	 * @throws AccessException
+	 *             Thrown if the interceptor is null.
+	 */
+	public synchronized void addInterceptor(AccessInterceptor interceptor) throws AccessException {
+		if (interceptor == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing interceptor.");
+		}
+		AccessInterceptor[] result = Arrays.copyOf(interceptors, interceptors.length + 1);
+		result[interceptors.length] = interceptor;
+		interceptors = result;
+	}
+
+	/**
+	 * Removes an interceptor added with {@link #addInterceptor(AccessInterceptor)}.
+	 *
+	 * @param interceptor
+	 *            The interceptor.
+	 * @return true if the interceptor was removed, false if it wasn't added.
+	 */
+	public synchronized boolean removeInterceptor(AccessInterceptor interceptor) {
+		List<AccessInterceptor> result = new ArrayList<>(Arrays.asList(interceptors));
+		if (!result.remove(interceptor)) {
+			return false;
+		}
+		interceptors = result.isEmpty() ? NO_INTERCEPTORS : result.toArray(new AccessInterceptor[result.size()]);
+		return true;
+	}
+
+	/**
+	 * Registers an {@link AccessSdkMXBean} for this instance with the platform MBean server, named
+	 * {@code com.kount.kountaccess:type=AccessSdk,name=<merchantId>-<instance number>}. It exposes the connection
+	 * pool, prefetch cache and latency state, and lets the pool size, timeouts and default concurrency be changed at
+	 * runtime.
+	 *
+	 * @return The name of the MBean.
+	 * @throws AccessException
+	 *             Thrown if the MBean is already registered or could not be registered.
+	 */
+	public ObjectName registerMBean() throws AccessException {
+		return registerMBean(merchantId + "-" + instances.incrementAndGet());
+	}
+
+	/**
+	 * Registers an {@link AccessSdkMXBean} for this instance with the platform MBean server, named
+	 * {@code com.kount.kountaccess:type=AccessSdk,name=<name>}. See {@link #registerMBean()}.
+	 *
+	 * @param name
+	 *            The name of the instance.
+	 * @return The name of the MBean.
+	 * @throws AccessException
+	 *             Thrown if the name is invalid, the MBean is already registered or could not be registered.
+	 */
+	public synchronized ObjectName registerMBean(String name) throws AccessException {
+		if (mbeanName != null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "MBean already registered as " + mbeanName);
+		}
+		try {
+			ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=AccessSdk,name=" + name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new AccessSdkManagement(this), objectName);
+			mbeanName = objectName;
+			return objectName;
+		} catch (MalformedObjectNameException | InstanceAlreadyExistsException e) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid MBean name (" + name + ")", e);
+		} catch (JMException e) {
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Unable to register MBean", e);
+		}
+	}
+
+	/**
+	 * Unregisters the MBean registered with {@link #registerMBean()}, if any.
+	 */
+	public synchronized void unregisterMBean() {
+		if (mbeanName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		} catch (JMException e) {
+			logger.warn("Unable to unregister MBean {}", mbeanName, e);
+		}
+		mbeanName = null;
+	}
+
+	/**
+	 * @return true once {@link #close()} was called: new calls are rejected with {@link AccessErrorType#REJECTED}.
+	 */
+	public boolean isClosed() {
+		return closing;
+	}
+
+	/**
+	 * Closes the SDK, giving the calls in flight and the queued work up to {@link #DEFAULT_CLOSE_TIMEOUT_MILLIS} to
+	 * complete. See {@link #close(long, TimeUnit)}.
+	 */
+	@Override
+	public void close() {
+		try {
+			close(DEFAULT_CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Closes the SDK gracefully, e.g. on SIGTERM. New calls are rejected right away with
+	 * {@link AccessErrorType#REJECTED}. The calls in flight, the bulk updates, batch lookups and prefetches already
+	 * accepted and the trust updates queued in the write-behind mode are given until the timeout to complete. Then
+	 * the executor and the connection pool of the SDK are shut down, aborting what is left, the metrics listener is
+	 * flushed if it implements {@link Flushable}, and the MBean is unregistered.
+	 * <p>
+	 * An executor or HTTP client given to the {@link #builder()} belongs to the caller and is left open. Trust updates
+	 * still queued at the timeout stay in the journal, if any, and are sent on the next start. Calling it again only
+	 * waits for the first close.
+	 *
+	 * @param timeout
+	 *            The maximum time to wait for the work to complete.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return true if all the work completed before the timeout.
+	 * @throws InterruptedException
+	 *             Thrown if interrupted while waiting. The SDK is closed anyway, without waiting any longer.
+	 */
+	public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+		synchronized (this) {
+			if (closing) {
+				return terminated.await(timeout, unit) && drained;
+			}
+			closing = true;
+		}
+		logger.info("closing Access SDK: {} calls and tasks active, {} trust updates queued", activeWork.get(),
+				getPendingTrustUpdates());
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean complete = false;
+		try {
+			TrustWriteBehind writeBehind = trustWriteBehind;
+			complete = ((writeBehind == null) || writeBehind.flush(timeout, unit)) && awaitIdle(deadline);
+			ExecutorService ownExecutor = getOwnExecutor();
+			if (ownExecutor != null) {
+				ownExecutor.shutdown();
+				complete &= ownExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+						TimeUnit.NANOSECONDS);
+			}
+		} finally {
+			closed = true;
+			release();
+			drained = complete;
+			terminated.countDown();
+		}
+		if (complete) {
+			logger.info("Access SDK closed");
+		} else {
+			logger.warn("Access SDK closed before all the calls and queued work completed: {} left, {} trust updates",
+					activeWork.get(), getPendingTrustUpdates());
+		}
+		return complete;
+	}
+
+	private boolean awaitIdle(long deadline) throws InterruptedException {
+		synchronized (idle) {
+			while (true) {
+				while (activeWork.get() > 0) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+				}
+				quiescent = true;
+				// a call counted in before the flag was seen is waited for, the next ones are rejected
+				if (activeWork.get() == 0) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shuts down what the SDK owns, whether the work is drained or not.
+	 */
+	private void release() {
+		TrustWriteBehind writeBehind = trustWriteBehind;
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+		ExecutorService ownExecutor = getOwnExecutor();
+		if (ownExecutor != null) {
+			ownExecutor.shutdownNow();
+		}
+		if ((parent == null) && (scheduler != null)) {
+			scheduler.close();
+		}
+		CloseableHttpClient ownClient;
+		synchronized (this) {
+			if (keepAlive != null) {
+				keepAlive.close();
+			}
+			if (dnsCache != null) {
+				dnsCache.close();
+			}
+			ownClient = (config.getHttpClient() == null) ? httpClient : null;
+		}
+		if (ownClient != null) {
+			try {
+				ownClient.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close the connection pool", e);
+			}
+		}
+		AccessMetrics listener = metrics;
+		// the listener of a view may be shared with the other views
+		if ((parent == null) && (listener instanceof Flushable)) {
+			try {
+				((Flushable) listener).flush();
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Unable to flush the metrics", e);
+			}
+		}
+		unregisterMBean();
+	}
+
+	/**
+	 * @return the executor created by the SDK, if any; an executor given to the builder is not the SDK's to shut down.
+	 */
+	private ExecutorService getOwnExecutor() {
+		return (config.getExecutor() == null) ? executor : null;
+	}
+
+	private List<NameValuePair> createTrustByDeviceParameters(String deviceId, String uniq, String trustedState,
+			Map<String, String> additionalParameters) throws AccessException {
+		if ((deviceId == null) || deviceId.isEmpty() || deviceId.trim().isEmpty()) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing deviceId.");
+		}
+		if ((uniq == null) || uniq.isEmpty() || uniq.trim().isEmpty()) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing uniq.");
+		}
+		verifyTrustedState(trustedState);
+
+		if (additionalParameters == null) {
+			additionalParameters = new HashMap<>();
+		}
+		additionalParameters.put("d", deviceId);
+		additionalParameters.put("uniq", uniq);
+		additionalParameters.put("ts", trustedState);
+
+		return createRequestParameters(null, null, null, additionalParameters);
+	}
+
+	private List<NameValuePair> createTrustBySessionParameters(String session, String uniq, String trustedState,
+			Map<String, String> additionalParameters) throws AccessException {
+		verifySessionId(session);
+		if ((uniq == null) || uniq.isEmpty() || uniq.trim().isEmpty()) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing or empty uniq.");
+		}
+		verifyTrustedState(trustedState);
+
+		if (additionalParameters == null) {
+			additionalParameters = new HashMap<>();
+		}
+		additionalParameters.put("uniq", uniq);
+		additionalParameters.put("ts", trustedState);
+
+		return createRequestParameters(session, null, null, additionalParameters);
+	}
+
+	private void submitTrustUpdate(String endpoint, List<NameValuePair> parameters) throws AccessException {
+		TrustWriteBehind writeBehind = trustWriteBehind;
+		if (writeBehind != null) {
+			writeBehind.submit(endpoint, parameters);
+		} else {
+			postTrustUpdate(endpoint, parameters);
+		}
+	}
+
+	private void postTrustUpdate(String endpoint, List<NameValuePair> parameters) throws AccessException {
+		boolean bySession = DEVICE_TRUST_BY_SESSION.equals(endpoint);
+		String url = bySession ? deviceTrustBySessionEndpoint : deviceTrustByDeviceEndpoint;
+		if (logger.isDebugEnabled()) {
+			logger.debug("{} request: host = {}, parameters = {}", endpoint, url,
+					LogRedaction.parameters(parameters));
+		}
+		AccessEndpoint accessEndpoint = bySession ? AccessEndpoint.DEVICE_TRUST_BY_SESSION
+				: AccessEndpoint.DEVICE_TRUST_BY_DEVICE;
+		this.postRequestAsString(accessEndpoint, url, parameters);
+	}
+
+	/**
+	 * Gets the threshold decision and velocity data for the session's username and password.
+	 *
+	 * @param session
+	 *            The Session ID generated for the Data Collector service.
 	 * @param username
 	 *            The username of the user.
 	 * @param password
@@ -518,19 +1422,16 @@ public class AccessSdk {
 	 */
 	public JSONObject getDecision(String session, String username, String password,
 			Map<String, String> additionalParameters) throws AccessException {
-
+		checkOpen();
 		verifySessionId(session);
 
 		List<NameValuePair> parameters = createRequestParameters(session, username, password, additionalParameters);
-		logger.debug("decision request: host = " + decisionEndpoint + ", parameters = " + parameters.toString());
-		long startTime = System.currentTimeMillis();
-		String response = this.postRequest(decisionEndpoint, parameters);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime) + ", response = " + response);
-		if (response != null) {
-			return processJSONEntity(response);
+		if (logger.isDebugEnabled()) {
+			logger.debug("decision request: host = {}, parameters = {}", decisionEndpoint,
+					LogRedaction.parameters(parameters));
 		}
-
-		return null;
+		JSONObject response = this.postRequest(AccessEndpoint.DECISION, decisionEndpoint, parameters);
+		return response;
 	}
 
 	/**
@@ -558,32 +1459,131 @@ public class AccessSdk {
 	 *             Thrown if any of the parameter values are invalid or there was a problem getting a response.
 	 */
 	public JSONObject getUniques(String deviceId, Map<String, String> additionalParameters) throws AccessException {
+		checkOpen();
+		return lookupUniques(deviceId, additionalParameters);
+	}
+
+	private JSONObject lookupUniques(String deviceId, Map<String, String> additionalParameters)
+			throws AccessException {
 		if ((deviceId == null) || deviceId.isEmpty()) {
 			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing deviceId.");
 		}
 
-		StringBuilder parameters = new StringBuilder("?");
-		// version and deviceId
-		parameters.append("v=").append(version).append("&d=").append(deviceId);
+		String urlString = createQueryUrl(getUniquesEndpoint, "d", deviceId, additionalParameters);
 
-		// Add the additional parameters, if they exist.
-		if (additionalParameters != null) {
-			for (Map.Entry<String, String> entry : additionalParameters.entrySet()) {
-				parameters.append("&").append(entry.getKey()).append("=").append(entry.getValue());
-			}
+		if (logger.isDebugEnabled()) {
+			logger.debug("getuniques request: url = {}", LogRedaction.url(urlString));
 		}
+		JSONObject response = this.getRequest(AccessEndpoint.GET_UNIQUES, urlString);
+		return response;
+	}
+
+	/**
+	 * Gets the devices of many uniq customer IDs at once. Duplicate uniqs are looked up once, with at most 8 requests
+	 * (by default) in flight over pooled connections. A failing lookup doesn't stop the others.
+	 *
+	 * @param uniqs
+	 *            The uniq customer IDs.
+	 * @return The getdevices response for every uniq that succeeded and the error for every uniq that failed.
+	 * @throws AccessException
+	 *             Thrown if the uniqs are missing or the calling thread was interrupted.
+	 */
+	public BatchResult getDevicesBatch(Collection<String> uniqs) throws AccessException {
+		return getDevicesBatch(uniqs, getDefaultConcurrency());
+	}
+
+	/**
+	 * Gets the devices of many uniq customer IDs at once. See {@link #getDevicesBatch(Collection)}.
+	 *
+	 * @param uniqs
+	 *            The uniq customer IDs.
+	 * @param maxConcurrency
+	 *            The maximum number of requests in flight.
+	 * @return The getdevices response for every uniq that succeeded and the error for every uniq that failed.
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid or the calling thread was interrupted.
+	 */
+	public BatchResult getDevicesBatch(Collection<String> uniqs, int maxConcurrency) throws AccessException {
+		return lookupBatch(uniqs, maxConcurrency, false);
+	}
+
+	/**
+	 * Gets the uniq customer IDs of many devices at once. Duplicate device ids are looked up once, with at most 8
+	 * requests (by default) in flight over pooled connections. A failing lookup doesn't stop the others.
+	 *
+	 * @param deviceIds
+	 *            Device IDs(fingerprints).
+	 * @return The getuniques response for every device that succeeded and the error for every device that failed.
+	 * @throws AccessException
+	 *             Thrown if the device ids are missing or the calling thread was interrupted.
+	 */
+	public BatchResult getUniquesBatch(Collection<String> deviceIds) throws AccessException {
+		return getUniquesBatch(deviceIds, getDefaultConcurrency());
+	}
 
-		String urlString = getUniquesEndpoint + parameters;
+	/**
+	 * Gets the uniq customer IDs of many devices at once. See {@link #getUniquesBatch(Collection)}.
+	 *
+	 * @param deviceIds
+	 *            Device IDs(fingerprints).
+	 * @param maxConcurrency
+	 *            The maximum number of requests in flight.
+	 * @return The getuniques response for every device that succeeded and the error for every device that failed.
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid or the calling thread was interrupted.
+	 */
+	public BatchResult getUniquesBatch(Collection<String> deviceIds, int maxConcurrency) throws AccessException {
+		return lookupBatch(deviceIds, maxConcurrency, true);
+	}
+
+	private BatchResult lookupBatch(Collection<String> keys, int maxConcurrency, boolean uniques)
+			throws AccessException {
+		checkOpen();
+		if (keys == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, uniques ? "Missing deviceIds." : "Missing uniqs.");
+		}
+		verifyConcurrency(maxConcurrency);
+
+		beginWork();
+		try {
+			return runBatch(keys, maxConcurrency, uniques);
+		} finally {
+			endWork();
+		}
+	}
+
+	private BatchResult runBatch(Collection<String> keys, int maxConcurrency, final boolean uniques)
+			throws AccessException {
 
-		logger.debug("getuniques request: url = " + urlString);
+		final List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+		final JSONObject[] responses = new JSONObject[distinct.size()];
 		long startTime = System.currentTimeMillis();
-		String response = this.getRequest(urlString);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime) + ", response = " + response);
-		if (response != null) {
-			return processJSONEntity(response);
+		AccessException[] errors;
+		try {
+			errors = BoundedParallel.run(getExecutor(), distinct.size(), maxConcurrency, new BoundedParallel.Call() {
+				@Override
+				public void run(int index) throws AccessException {
+					String key = distinct.get(index);
+					responses[index] = uniques ? lookupUniques(key, null) : lookupDevices(key, null);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Interrupted during batch lookup", e);
 		}
 
-		return null;
+		Map<String, JSONObject> results = new LinkedHashMap<>();
+		Map<String, AccessException> failures = new LinkedHashMap<>();
+		for (int i = 0; i < responses.length; i++) {
+			if (errors[i] != null) {
+				failures.put(distinct.get(i), errors[i]);
+			} else {
+				results.put(distinct.get(i), responses[i]);
+			}
+		}
+		BatchResult result = new BatchResult(results, failures, System.currentTimeMillis() - startTime);
+		logger.debug("{} batch: {}", uniques ? "getuniques" : "getdevices", result);
+		return result;
 	}
 
 
@@ -633,45 +1633,189 @@ public class AccessSdk {
 	 *            Additional parameters to send to server.
 	 * @return A JSONObject containing the response.
 	 * @throws AccessException
-	 *             Thrown if any of the parameter values are invalid or there was a problem getting a response.
+	 *             Thrown if any of the parameter values are invalid or there was a problem getting a response.
+	 */
+	public JSONObject getInfo(int infoFlag, String session, String uniq, String username, String password,
+			Map<String, String> additionalParameters) throws AccessException {
+		checkOpen();
+		verifySessionId(session);
+		verifyInfoParams(infoFlag, uniq, username, password);
+
+		// only the data sets that don't need credentials can be prefetched
+		if ((additionalParameters == null) && ((infoFlag & ~PREFETCHABLE_DATA_SETS) == 0)) {
+			JSONObject info = getPrefetched(session, infoFlag, uniq);
+			if (info != null) {
+				return info;
+			}
+		}
+
+		List<NameValuePair> parameters = createInfoParameters(infoFlag, session, uniq, username, password,
+				additionalParameters);
+		if (logger.isDebugEnabled()) {
+			logger.debug("info request: host = {}, parameters = {}", infoEndpoint,
+					LogRedaction.parameters(parameters));
+		}
+		JSONObject response = this.postRequest(AccessEndpoint.INFO, infoEndpoint, parameters);
+		return response;
+	}
+
+	/**
+	 * Starts getting the device info and/or the trusted device information for the session in the background, as soon
+	 * as the session id is known (e.g. when the login page is rendered). A later {@link #getDevice(String)} or
+	 * {@link #getInfo(int, String, String, String, String)} for the same session and data sets, without additional
+	 * parameters, completes from the prefetched response or joins the request that is still in flight, waiting for it
+	 * up to the socket timeout. A prefetched response is used by one call only and kept for a short time, a trust
+	 * update of the session (or of a device of the customer) drops it, and no request is sent while the prefetch cache
+	 * is full.
+	 *
+	 * @param session
+	 *            The Session ID generated for the Data Collector service.
+	 * @param dataSet
+	 *            the requested set of data elements, only info and trusted device are supported.
+	 * @throws AccessException
+	 *             Thrown if any of the parameter values are invalid.
+	 */
+	public void prefetch(String session, InfoEndpointDataSet dataSet) throws AccessException {
+		prefetch(session, null, dataSet);
+	}
+
+	/**
+	 * Starts getting the device info and/or the trusted device information for the session and customer in the
+	 * background. See {@link #prefetch(String, InfoEndpointDataSet)}.
+	 *
+	 * @param session
+	 *            The Session ID generated for the Data Collector service.
+	 * @param uniq
+	 *            customer identifier, required for the trusted device information.
+	 * @param dataSet
+	 *            the requested set of data elements, only info and trusted device are supported.
+	 * @throws AccessException
+	 *             Thrown if any of the parameter values are invalid.
 	 */
-	public JSONObject getInfo(int infoFlag, String session, String uniq, String username, String password,
-			Map<String, String> additionalParameters) throws AccessException {
-
+	public void prefetch(final String session, final String uniq, InfoEndpointDataSet dataSet)
+			throws AccessException {
+		checkOpen();
 		verifySessionId(session);
-		verifyInfoParams(infoFlag, uniq, username, password);
+		if (dataSet == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing dataSet.");
+		}
+		final int infoFlag = dataSet.build();
+		if ((infoFlag & ~PREFETCHABLE_DATA_SETS) != 0) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid infoFlag (" + infoFlag + ").  Only info and trusted device can be prefetched.");
+		}
+		verifyInfoParams(infoFlag, uniq, null, null);
+
+		final FutureTask<String> response = new FutureTask<>(new Callable<String>() {
+			@Override
+			public String call() throws AccessException {
+				List<NameValuePair> parameters = createInfoParameters(infoFlag, session, uniq, null, null, null);
+				if (logger.isDebugEnabled()) {
+					logger.debug("info prefetch: host = {}, parameters = {}", infoEndpoint,
+							LogRedaction.parameters(parameters));
+				}
+				return postRequestAsString(AccessEndpoint.INFO, infoEndpoint, parameters);
+			}
+		});
+		// the slot is taken first, a response that couldn't be parked would be wasted
+		if (!prefetchCache.put(session, infoFlag, uniq, response)) {
+			logger.debug("prefetch cache is full, prefetch for session {} skipped", session);
+			return;
+		}
+		try {
+			submitWork(new Callable<Void>() {
+				@Override
+				public Void call() {
+					response.run();
+					return null;
+				}
+			});
+		} catch (RuntimeException e) {
+			prefetchCache.evict(session, response);
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes the prefetched response for the session, if there is one, and waits for it up to the socket timeout (or
+	 * {@value ConnectionWarmUp#DEFAULT_TIMEOUT_MILLIS}ms without one) capped by the time left before the deadline, so a
+	 * stuck prefetch doesn't hold the call.
+	 *
+	 * @return the parsed response, or null if the call has to go to the server.
+	 */
+	private JSONObject getPrefetched(String session, int infoFlag, String uniq) throws AccessException {
+		Future<String> prefetched = prefetchCache.take(session, infoFlag, uniq);
+		if (prefetched == null) {
+			prefetchMissed(infoFlag);
+			return null;
+		}
+		int timeout = getRequestConfig().getSocketTimeout();
+		if (timeout <= 0) {
+			timeout = ConnectionWarmUp.DEFAULT_TIMEOUT_MILLIS;
+		}
+		int remaining = remainingMillis();
+		if (remaining > 0) {
+			timeout = cap(timeout, remaining);
+		}
+		String response;
+		try {
+			response = prefetched.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			// the prefetch failed, so retry with a regular call
+			prefetchMissed(infoFlag);
+			logger.debug("prefetch for session {} failed: {}", session, e.getCause().getMessage());
+			return null;
+		} catch (TimeoutException e) {
+			// still in flight, or queued behind other work: the call goes to the server itself
+			prefetchMissed(infoFlag);
+			logger.debug("prefetch for session {} not completed within {}ms", session, timeout);
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR,
+					"Interrupted while waiting for prefetched response", e);
+		}
+		if (response == null) {
+			prefetchMissed(infoFlag);
+			return null;
+		}
+		JSONObject info;
+		try {
+			info = processJSONEntity(response);
+		} catch (AccessException e) {
+			prefetchMissed(infoFlag);
+			throw e;
+		}
+		prefetchCache.recordLookup(true);
+		AccessFlightRecorder.prefetchLookup(infoFlag, true);
+		logger.debug("prefetched info response used for session {}", session);
+		return info;
+	}
+
+	private void prefetchMissed(int infoFlag) {
+		prefetchCache.recordLookup(false);
+		AccessFlightRecorder.prefetchLookup(infoFlag, false);
+	}
 
+	private List<NameValuePair> createInfoParameters(int infoFlag, String session, String uniq, String username,
+			String password, Map<String, String> additionalParameters) {
 		if (additionalParameters == null) {
 			additionalParameters = new HashMap<>();
 		}
 		additionalParameters.put("i", Integer.toString(infoFlag));
 		additionalParameters.put("uniq", uniq);
 
-		List<NameValuePair> parameters = createRequestParameters(session, username, password, additionalParameters);
-		logger.debug("info request: host = " + infoEndpoint + ", parameters = " + parameters.toString());
-		long startTime = System.currentTimeMillis();
-		String response = this.postRequest(infoEndpoint, parameters);
-		logger.debug("request elapsed time = " + (System.currentTimeMillis() - startTime) + ", response = " + response);
-		if (response != null) {
-			return processJSONEntity(response);
-		}
-
-		return null;
+		return createRequestParameters(session, username, password, additionalParameters);
 	}
 
-	private void verifyInfoParams(int infoFlag, String uniq, String username, String password) throws AccessException {
+	void verifyInfoParams(int infoFlag, String uniq, String username, String password) throws AccessException {
 		if ((infoFlag < 1) || (infoFlag > 31)) {
 			throw new AccessException(AccessErrorType.INVALID_DATA,
 					"Invalid infoFlag (" + infoFlag + ").  Must be an integer between 1 and 31 (including).");
 		}
 
-		int behavio = new InfoEndpointDataSet().withBehavioSec().build();
-		int decision = new InfoEndpointDataSet().withDecision().build();
-		int trusted = new InfoEndpointDataSet().withTrustedDevice().build();
-		int velocity = new InfoEndpointDataSet().withVelocity().build();
-
 		// uniq is required for trusted and behavio request
-		if (((infoFlag & trusted) == trusted) || ((infoFlag & behavio) == behavio)) {
+		if ((infoFlag & (InfoEndpointDataSet.TRUSTED | InfoEndpointDataSet.BEHAVIOSEC)) != 0) {
 			if ((uniq == null) || uniq.isEmpty() || uniq.trim().isEmpty()) {
 				throw new AccessException(AccessErrorType.INVALID_DATA,
 						"Missing uniq (" + uniq + ").  Must be present for trusted and behavio requests.");
@@ -679,7 +1823,7 @@ public class AccessSdk {
 		}
 
 		// user and password are required for velocity and decision
-		if (((infoFlag & velocity) == velocity) || ((infoFlag & decision) == decision)) {
+		if ((infoFlag & (InfoEndpointDataSet.VELOCITY | InfoEndpointDataSet.DECISION)) != 0) {
 			if ((username == null) || username.isEmpty() || username.trim().isEmpty() || (password == null)
 					|| password.isEmpty() || password.trim().isEmpty()) {
 				throw new AccessException(AccessErrorType.INVALID_DATA, "Missing username/password (" + username + "/"
@@ -695,6 +1839,13 @@ public class AccessSdk {
 		}
 	}
 
+	private void verifyConcurrency(int maxConcurrency) throws AccessException {
+		if (maxConcurrency < 1) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid maxConcurrency (" + maxConcurrency + ").  Must be a positive integer.");
+		}
+	}
+
 	private void verifyTrustedState(String trustedState) throws AccessException {
 		if ((trustedState == null) || trustedState.isEmpty()) {
 			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing trustedState.");
@@ -730,7 +1881,23 @@ public class AccessSdk {
 		}
 	}
 
-	private List<NameValuePair> createRequestParameters(String session, String username, String password,
+	/**
+	 * Creates the URL of a GET request: the version, the key parameter of the endpoint and the additional parameters.
+	 */
+	String createQueryUrl(String endpoint, String name, String value, Map<String, String> additionalParameters) {
+		StringBuilder url = new StringBuilder(endpoint);
+		url.append("?v=").append(version).append('&').append(name).append('=').append(value);
+
+		// Add the additional parameters, if they exist.
+		if (additionalParameters != null) {
+			for (Map.Entry<String, String> entry : additionalParameters.entrySet()) {
+				url.append('&').append(entry.getKey()).append('=').append(entry.getValue());
+			}
+		}
+		return url.toString();
+	}
+
+	List<NameValuePair> createRequestParameters(String session, String username, String password,
 			Map<String, String> additionalParameters) {
 
 		List<NameValuePair> values = new ArrayList<>();
@@ -759,15 +1926,9 @@ public class AccessSdk {
 	}
 
 	/**
-	 * Creates the authentication header.
+	 * Returns the authentication header.
 	 */
 	private String getAuthorizationHeader() {
-		if (authorizationHeader != null) {
-			return authorizationHeader;
-		}
-
-		String header = merchantId + ":" + apiKey;
-		authorizationHeader = "Basic " + Base64.encodeBase64String(header.getBytes(StandardCharsets.UTF_8));
 		return authorizationHeader;
 	}
 
@@ -778,55 +1939,83 @@ public class AccessSdk {
 	 *            The String to convert
 	 * @return The converted string.
 	 */
-	private String hashValue(String value) {
+	String hashValue(String value) {
 		// Don't do anything if the value is empty
 		if ((value == null) || value.isEmpty()) {
 			return null;
 		}
-		MessageDigest md;
-		try {
-			md = MessageDigest.getInstance("SHA-256");
-			md.update(value.getBytes("UTF8"), 0, value.length());
-			byte[] hash = md.digest();
-			char[] hexChars = new char[hash.length * 2];
-			int v;
-			for (int j = 0; j < hash.length; j++) {
-				v = hash[j] & 0xFF;
-				hexChars[j * 2] = hexArray[v >>> 4];
-				hexChars[(j * 2) + 1] = hexArray[v & 0x0F];
-			}
-			return new String(hexChars);
-		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
-			// ignoring
-			logger.warn("Could not hash parameter value", e);
+		MessageDigest md = SHA_256.get();
+		if (md == null) {
+			return null;
 		}
-
-		return null;
+		md.update(value.getBytes(StandardCharsets.UTF_8), 0, value.length());
+		byte[] hash = md.digest();
+		char[] hexChars = new char[hash.length * 2];
+		int v;
+		for (int j = 0; j < hash.length; j++) {
+			v = hash[j] & 0xFF;
+			hexChars[j * 2] = hexArray[v >>> 4];
+			hexChars[(j * 2) + 1] = hexArray[v & 0x0F];
+		}
+		return new String(hexChars);
 	}
 
 	/**
 	 * Handles the get request for the device info
 	 */
-	private String getRequest(String urlString) throws AccessException {
+	private JSONObject getRequest(AccessEndpoint endpoint, String urlString) throws AccessException {
+		AccessCall call = startCall(endpoint);
+		try {
+			return parse(call, get(call, urlString));
+		} catch (AccessException e) {
+			throw failCall(call, e);
+		} catch (RuntimeException e) {
+			call.setErrorType(AccessErrorType.INTERNAL_ERROR);
+			throw e;
+		} finally {
+			completeCall(call);
+		}
+	}
+
+	private String get(AccessCall call, String urlString) throws AccessException {
 		CloseableHttpResponse response = null;
+		boolean dispatched = false;
+		boolean sent = false;
+		long dispatchedAt = 0;
 
-		try (CloseableHttpClient client = getHttpClient()) {
+		try {
+			CloseableHttpClient client = getHttpClient();
 			HttpGet request = this.getHttpGet(urlString);
 			request.addHeader("Authorization", this.getAuthorizationHeader());
 			request.addHeader("Content-Type", "JSON");
-			
-			response = client.execute(request);
+			request.setConfig(getRequestConfig());
+			beforeRequest(call, request);
+
+			dispatched = acquireSlot(call);
+			applyDeadline(request);
+			sent = true;
+			dispatchedAt = System.nanoTime();
+			response = execute(client, request);
 			StatusLine status = response.getStatusLine();
+			call.setStatusCode(status.getStatusCode());
 			if (status.getStatusCode() != 200) {
 				throw new AccessException(AccessErrorType.NETWORK_ERROR,
 						"Bad Response(" + status.getStatusCode() + ")" + status.getReasonPhrase() + " " + urlString);
 
 			}
 
-			return this.getResponseAsString(response);
+			long readStart = System.nanoTime();
+			String result = this.getResponseAsString(response);
+			call.addPhaseNanos(AccessPhase.BODY_READ, System.nanoTime() - readStart);
+			call.setBytesReceived(contentLength(response.getEntity(), result));
+			if (logger.isDebugEnabled() && LogRedaction.samplePayload()) {
+				logger.debug("{} response = {}", call.getEndpoint().getName(), result);
+			}
+			return result;
 		} catch (UnknownHostException uhe) {
 			throw new AccessException(AccessErrorType.NETWORK_ERROR, "UNKNOWN HOST(" + urlString + ")");
 		} catch (IOException e) {
+			checkDeadline(urlString, e);
 			throw new AccessException(AccessErrorType.NETWORK_ERROR, "UNKNOWN NETWORK ISSUE, try again later)");
 		} catch (IllegalArgumentException iae) {
 			throw new AccessException(AccessErrorType.INVALID_DATA, "BAD URL(" + urlString + ")");
@@ -838,6 +2027,10 @@ public class AccessSdk {
 				}
 			} catch (IOException ioe) {
 				throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Unable to release resources", ioe);
+			} finally {
+				if (dispatched) {
+					releaseSlot(call, sent, dispatchedAt, response == null);
+				}
 			}
 		}
 	}
@@ -853,27 +2046,79 @@ public class AccessSdk {
 	 * @throws AccessException
 	 *             Thrown if the URL is bad or we can't connect or parse the response.
 	 */
-	private String postRequest(String urlString, List<NameValuePair> values) throws AccessException {
+	private JSONObject postRequest(AccessEndpoint endpoint, String urlString, List<NameValuePair> values)
+			throws AccessException {
+		AccessCall call = startCall(endpoint);
+		try {
+			return parse(call, post(call, urlString, values));
+		} catch (AccessException e) {
+			throw failCall(call, e);
+		} catch (RuntimeException e) {
+			call.setErrorType(AccessErrorType.INTERNAL_ERROR);
+			throw e;
+		} finally {
+			completeCall(call);
+		}
+	}
+
+	/**
+	 * Handles the post for the access request, without parsing the response.
+	 */
+	private String postRequestAsString(AccessEndpoint endpoint, String urlString, List<NameValuePair> values)
+			throws AccessException {
+		AccessCall call = startCall(endpoint);
+		try {
+			return post(call, urlString, values);
+		} catch (AccessException e) {
+			throw failCall(call, e);
+		} catch (RuntimeException e) {
+			call.setErrorType(AccessErrorType.INTERNAL_ERROR);
+			throw e;
+		} finally {
+			completeCall(call);
+		}
+	}
+
+	private String post(AccessCall call, String urlString, List<NameValuePair> values) throws AccessException {
 		CloseableHttpResponse response = null;
-		
-		try (CloseableHttpClient client = getHttpClient()) {
-			
+		boolean dispatched = false;
+		boolean sent = false;
+		long dispatchedAt = 0;
+
+		try {
+			CloseableHttpClient client = getHttpClient();
 			HttpPost request = getHttpPost(urlString);
 			request.addHeader("Authorization", this.getAuthorizationHeader());
 			HttpEntity entity = new UrlEncodedFormEntity(values);
 			request.setEntity(entity);
-
-			response = client.execute(request);
+			call.setBytesSent(Math.max(0, entity.getContentLength()));
+			request.setConfig(getRequestConfig());
+			beforeRequest(call, request);
+
+			dispatched = acquireSlot(call);
+			applyDeadline(request);
+			sent = true;
+			dispatchedAt = System.nanoTime();
+			response = execute(client, request);
 			StatusLine status = response.getStatusLine();
+			call.setStatusCode(status.getStatusCode());
 			if (status.getStatusCode() != 200) {
 				throw new AccessException(AccessErrorType.NETWORK_ERROR,
 						"Bad Response(" + status.getStatusCode() + ")" + status.getReasonPhrase() + " " + urlString);
 			}
 
-			return getResponseAsString(response);
+			long readStart = System.nanoTime();
+			String result = getResponseAsString(response);
+			call.addPhaseNanos(AccessPhase.BODY_READ, System.nanoTime() - readStart);
+			call.setBytesReceived(contentLength(response.getEntity(), result));
+			if (logger.isDebugEnabled() && LogRedaction.samplePayload()) {
+				logger.debug("{} response = {}", call.getEndpoint().getName(), result);
+			}
+			return result;
 		} catch (UnknownHostException uhe) {
 			throw new AccessException(AccessErrorType.NETWORK_ERROR, "UNKNOWN HOST(" + urlString + ")");
 		} catch (IOException e) {
+			checkDeadline(urlString, e);
 			throw new AccessException(AccessErrorType.NETWORK_ERROR, "UNKNOWN NETWORK ISSUE, try again later)", e);
 		} catch (IllegalArgumentException iae) {
 			throw new AccessException(AccessErrorType.INVALID_DATA, "BAD URL(" + urlString + ")");
@@ -885,7 +2130,312 @@ public class AccessSdk {
 				}
 			} catch (IOException ioe) {
 				throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Unable to release resources", ioe);
+			} finally {
+				if (dispatched) {
+					releaseSlot(call, sent, dispatchedAt, response == null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends a request to the Access host or, with several hosts, to the one picked by the host selector, and again to
+	 * the next one if no connection could be made.
+	 */
+	private CloseableHttpResponse execute(CloseableHttpClient client, HttpRequestBase request)
+			throws IOException, AccessException {
+		if (hostSelector == null) {
+			return client.execute(request);
+		}
+		URI uri = request.getURI();
+		HostSelector.Host tried = null;
+		for (int attempt = 1;; attempt++) {
+			HostSelector.Host host = hostSelector.select(tried);
+			request.setURI(host.resolve(uri));
+			long start = System.nanoTime();
+			host.begin();
+			CloseableHttpResponse response;
+			try {
+				response = client.execute(request);
+			} catch (ConnectionPoolTimeoutException e) {
+				// the pool is exhausted, not the host
+				host.cancel();
+				throw e;
+			} catch (IOException e) {
+				boolean notConnected = isConnectFailure(e);
+				host.fail(System.nanoTime() - start, notConnected);
+				if (!notConnected || (attempt >= hostSelector.size())) {
+					throw e;
+				}
+				logger.debug("could not connect to {}, failing over: {}", host.getName(), e.toString());
+				tried = host;
+				applyDeadline(request);
+				continue;
+			}
+			host.complete(System.nanoTime() - start, response.getStatusLine().getStatusCode() >= 500);
+			return response;
+		}
+	}
+
+	/**
+	 * @return whether the request failed before it could reach the server.
+	 */
+	private static boolean isConnectFailure(IOException e) {
+		return (e instanceof ConnectException) || (e instanceof ConnectTimeoutException)
+				|| (e instanceof NoRouteToHostException) || (e instanceof UnknownHostException);
+	}
+
+	private AccessCall startCall(AccessEndpoint endpoint) throws AccessException {
+		if (closed || ((parent != null) && parent.closed)) {
+			throw new AccessException(AccessErrorType.REJECTED, "Access SDK is closed");
+		}
+		beginWork();
+		// counted in first, so a close that didn't see this call yet waits for it
+		if (quiescent || ((parent != null) && parent.quiescent)) {
+			endWork();
+			throw new AccessException(AccessErrorType.REJECTED, "Access SDK is closed");
+		}
+		AccessCall call = new AccessCall(endpoint, merchantId);
+		AccessCall.setCurrent(call);
+		call.flightEvent = AccessFlightRecorder.beginCall();
+		try {
+			metrics.callStarted(endpoint);
+		} catch (RuntimeException e) {
+			logger.warn("metrics listener failed", e);
+		}
+		return call;
+	}
+
+	private void beforeRequest(AccessCall call, HttpRequest request) {
+		AccessInterceptor[] chain = interceptors;
+		if (chain.length == 0) {
+			return;
+		}
+		call.interceptors = chain;
+		call.interceptorStates = new Object[chain.length];
+		for (int i = 0; i < chain.length; i++) {
+			try {
+				call.interceptorStates[i] = chain[i].beforeRequest(call, request);
+			} catch (RuntimeException e) {
+				logger.warn("interceptor failed", e);
+			}
+		}
+	}
+
+	private AccessException failCall(AccessCall call, AccessException e) {
+		call.setErrorType(e.getAccessErrorType());
+		if (e.getCall() == null) {
+			e.setCall(call);
+		}
+		return e;
+	}
+
+	private void completeCall(AccessCall call) {
+		call.complete();
+		logger.debug("call completed: {}", call);
+		AccessCall.setCurrent(null);
+		AccessFlightRecorder.commitCall(call.flightEvent, call);
+		try {
+			metrics.callCompleted(call);
+		} catch (RuntimeException e) {
+			logger.warn("metrics listener failed", e);
+		}
+		AccessInterceptor[] chain = call.interceptors;
+		if (chain != null) {
+			for (int i = chain.length - 1; i >= 0; i--) {
+				try {
+					chain[i].afterResponse(call, call.interceptorStates[i]);
+				} catch (RuntimeException e) {
+					logger.warn("interceptor failed", e);
+				}
+			}
+		}
+		endWork();
+	}
+
+	/**
+	 * Waits for a slot in the dispatch queue, if enabled.
+	 *
+	 * @return true if a slot was taken, to be released once the response is consumed.
+	 */
+	private boolean acquireSlot(AccessCall call) throws AccessException {
+		if (scheduler == null) {
+			return false;
+		}
+		int timeout = getRequestConfig().getConnectionRequestTimeout();
+		int remaining = remainingMillis();
+		long start = System.nanoTime();
+		try {
+			scheduler.acquire(priority, dispatchTag, (remaining > 0) ? cap(timeout, remaining) : timeout);
+		} catch (AccessException e) {
+			if (e.getAccessErrorType() == AccessErrorType.NETWORK_ERROR) {
+				checkDeadline("a slot", e);
+			}
+			throw e;
+		} finally {
+			call.addPhaseNanos(AccessPhase.QUEUE, System.nanoTime() - start);
+		}
+		return true;
+	}
+
+	/**
+	 * Frees the slot of a call in the dispatch queue, its round trip time and outcome adapting the limit if enabled. A
+	 * call failing at its own deadline isn't a sign of an overload, so it doesn't back the limit shared with the other
+	 * calls off, but the time it took is still a sample: when such calls keep taking longer than usual, the limit goes
+	 * down.
+	 *
+	 * @param sent
+	 *            Whether the request was sent, or dropped before.
+	 * @param failed
+	 *            Whether the call failed without a response.
+	 */
+	private void releaseSlot(AccessCall call, boolean sent, long dispatchedAt, boolean failed) {
+		if (!sent) {
+			scheduler.release();
+			return;
+		}
+		long rttNanos = System.nanoTime() - dispatchedAt;
+		if (failed && deadlinePassed()) {
+			scheduler.release(rttNanos, false);
+			return;
+		}
+		int status = call.getStatusCode();
+		scheduler.release(rttNanos, failed || (status == 429) || (status >= 500));
+	}
+
+	/**
+	 * @return the time left before the deadline of the calls in milliseconds, or 0 if there is no deadline.
+	 * @throws AccessException
+	 *             Thrown if the deadline has passed ({@link AccessErrorType#DEADLINE_EXCEEDED}).
+	 */
+	private int remainingMillis() throws AccessException {
+		if (deadlineMillis == 0) {
+			return 0;
+		}
+		long remaining = deadlineMillis - System.currentTimeMillis();
+		if (remaining <= 0) {
+			throw new AccessException(AccessErrorType.DEADLINE_EXCEEDED,
+					"Deadline passed " + -remaining + "ms ago, call not sent");
+		}
+		return (int) Math.min(Integer.MAX_VALUE, remaining);
+	}
+
+	/**
+	 * Caps the timeouts of a request by the time left before the deadline of the calls, if any, right before it is
+	 * sent.
+	 *
+	 * @throws AccessException
+	 *             Thrown if the deadline has passed ({@link AccessErrorType#DEADLINE_EXCEEDED}).
+	 */
+	private void applyDeadline(HttpRequestBase request) throws AccessException {
+		int remaining = remainingMillis();
+		if (remaining > 0) {
+			RequestConfig config = getRequestConfig();
+			request.setConfig(RequestConfig.copy(config)
+					.setConnectionRequestTimeout(cap(config.getConnectionRequestTimeout(), remaining))
+					.setConnectTimeout(cap(config.getConnectTimeout(), remaining))
+					.setSocketTimeout(cap(config.getSocketTimeout(), remaining)).build());
+		}
+	}
+
+	/**
+	 * @return the timeout, or the time left if lower; a timeout of 0 or less (none or system default) is the time left.
+	 */
+	private static int cap(int timeout, int remaining) {
+		return ((timeout > 0) && (timeout < remaining)) ? timeout : remaining;
+	}
+
+	/**
+	 * Turns a failure while waiting into {@link AccessErrorType#DEADLINE_EXCEEDED} if the deadline of the calls has
+	 * passed meanwhile, the timeouts being capped by it.
+	 */
+	private void checkDeadline(String waitingFor, Exception cause) throws AccessException {
+		if (deadlinePassed()) {
+			throw new AccessException(AccessErrorType.DEADLINE_EXCEEDED,
+					"Deadline passed waiting for " + waitingFor + ": " + cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * @return whether the calls have a deadline, and it has passed.
+	 */
+	private boolean deadlinePassed() {
+		return (deadlineMillis != 0) && (System.currentTimeMillis() >= deadlineMillis);
+	}
+
+	private void checkOpen() throws AccessException {
+		if (closing || ((parent != null) && parent.closing)) {
+			throw new AccessException(AccessErrorType.REJECTED, "Access SDK is closed");
+		}
+	}
+
+	private void beginWork() {
+		activeWork.incrementAndGet();
+		if (parent != null) {
+			// the shared pool stays open until the work of the views is drained too
+			parent.beginWork();
+		}
+	}
+
+	private void endWork() {
+		if ((activeWork.decrementAndGet() == 0) && closing) {
+			synchronized (idle) {
+				idle.notifyAll();
+			}
+		}
+		if (parent != null) {
+			parent.endWork();
+		}
+	}
+
+	/**
+	 * Runs background work on the executor, counted as active until it completes so the close waits for it.
+	 */
+	private <T> Future<T> submitWork(final Callable<T> work) {
+		beginWork();
+		try {
+			return getExecutor().submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					try {
+						return work.call();
+					} finally {
+						endWork();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			endWork();
+			throw e;
+		}
+	}
+
+	/**
+	 * Size of the response body: the Content-Length if known, else the length of the body read.
+	 */
+	private static long contentLength(HttpEntity entity, String body) {
+		if ((entity != null) && (entity.getContentLength() >= 0)) {
+			return entity.getContentLength();
+		}
+		return (body != null) ? body.length() : 0;
+	}
+
+	/**
+	 * Parses the response within the call, timing the {@link AccessPhase#PARSE} phase.
+	 */
+	private JSONObject parse(AccessCall call, String response) throws AccessException {
+		if (response == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		try {
+			JSONObject result = processJSONEntity(response);
+			if (result.has("response_id")) {
+				call.setResponseId(result.getString("response_id"));
 			}
+			return result;
+		} finally {
+			call.addPhaseNanos(AccessPhase.PARSE, System.nanoTime() - start);
 		}
 	}
 
@@ -896,7 +2446,7 @@ public class AccessSdk {
 	 *            The Http response data as a string
 	 * @return The access JSONObject or null.
 	 */
-	private JSONObject processJSONEntity(String response) throws AccessException {
+	JSONObject processJSONEntity(String response) throws AccessException {
 		JSONObject result = null;
 		try {
 			result = JSONObject.fromObject(response);
@@ -954,12 +2504,137 @@ public class AccessSdk {
 	}
 
 	/*
-	 * Getting the httpclient by itself so we can mock it.
+	 * Getting the httpclient by itself so we can mock it. The client is shared by all the calls, so the connections
+	 * to the Access host are pooled and kept alive.
 	 *
 	 * @return A CloseableHttpClient object.
 	 */
 	CloseableHttpClient getHttpClient() {
-		return HttpClients.createDefault();
+		CloseableHttpClient result = httpClient;
+		if (result == null) {
+			synchronized (this) {
+				result = httpClient;
+				if (result == null) {
+					DnsResolver dnsResolver = SystemDefaultDnsResolver.INSTANCE;
+					if (config.getDnsTtlMillis() > 0) {
+						dnsCache = new CachingDnsResolver(dnsResolver, config.getDnsTtlMillis(),
+								config.getDnsMaxStaleMillis());
+						dnsResolver = dnsCache;
+					}
+					connectionManager = PhaseTiming.connectionManager(config.getSslContext(), dnsResolver);
+					connectionManager.setMaxTotal(maxConnections);
+					connectionManager.setDefaultMaxPerRoute(maxConnections);
+					connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivityMillis());
+					if (config.getKeepAliveConnections() > 0) {
+						connectionManager
+								.setDefaultSocketConfig(SocketConfig.custom().setSoKeepAlive(true).build());
+						keepAlive = new ConnectionKeepAlive(connectionManager, ConnectionWarmUp.route(infoEndpoint),
+								config.getKeepAliveConnections(), config.getKeepAliveIntervalMillis(),
+								config.getKeepAliveMaxIdleMillis(), warmUpTimeout());
+					}
+					result = HttpClients.custom().setConnectionManager(connectionManager)
+							.setRequestExecutor(PhaseTiming.requestExecutor()).build();
+					httpClient = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	int getMerchantId() {
+		return merchantId;
+	}
+
+	/*
+	 * Statistics of the connection pool, or null if no call was made yet.
+	 */
+	PoolStats getPoolStats() {
+		PoolingHttpClientConnectionManager manager;
+		synchronized (this) {
+			manager = connectionManager;
+		}
+		return (manager != null) ? manager.getTotalStats() : null;
+	}
+
+	int getMaxConnections() {
+		return maxConnections;
+	}
+
+	synchronized void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		if (connectionManager != null) {
+			connectionManager.setMaxTotal(maxConnections);
+			connectionManager.setDefaultMaxPerRoute(maxConnections);
+		}
+	}
+
+	/*
+	 * Timeouts of the requests, read on every call so the views follow the changes made to their root at runtime.
+	 */
+	RequestConfig getRequestConfig() {
+		return (parent != null) ? parent.requestConfig : requestConfig;
+	}
+
+	void setRequestConfig(RequestConfig requestConfig) {
+		if (parent != null) {
+			parent.setRequestConfig(requestConfig);
+		} else {
+			this.requestConfig = requestConfig;
+		}
+	}
+
+	int getDefaultConcurrency() {
+		return (parent != null) ? parent.defaultConcurrency : defaultConcurrency;
+	}
+
+	void setDefaultConcurrency(int defaultConcurrency) {
+		if (parent != null) {
+			parent.setDefaultConcurrency(defaultConcurrency);
+		} else {
+			this.defaultConcurrency = defaultConcurrency;
+		}
+	}
+
+	PrefetchCache getPrefetchCache() {
+		return prefetchCache;
+	}
+
+	/*
+	 * Dispatch queue of the requests, or null if the requests are sent directly.
+	 */
+	FairScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/*
+	 * Host selector of the requests, or null if there is a single host.
+	 */
+	HostSelector getHostSelector() {
+		return hostSelector;
+	}
+
+	int getPendingTrustUpdates() {
+		TrustWriteBehind writeBehind = trustWriteBehind;
+		return (writeBehind != null) ? writeBehind.getPendingCount() : 0;
+	}
+
+	/*
+	 * Getting the executor for asynchronous requests by itself so we can mock it.
+	 *
+	 * @return An ExecutorService object.
+	 */
+	ExecutorService getExecutor() {
+		ExecutorService result = executor;
+		if (result == null) {
+			synchronized (this) {
+				result = executor;
+				if (result == null) {
+					result = Executors.newCachedThreadPool(new AccessThreadFactory("async"));
+					executor = result;
+				}
+			}
+		}
+		return result;
 	}
 
 	///////////////////////////////////////////////////////////////////////////////////////////////
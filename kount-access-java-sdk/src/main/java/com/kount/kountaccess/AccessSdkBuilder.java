@@ -0,0 +1,568 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Fluent builder of an {@link AccessSdk}, from {@link AccessSdk#builder()}. The host, merchant ID and API key are
+ * required; everything else has a default. The values are validated once, when the SDK (or its
+ * {@link AccessSdkConfig}) is built.
+ *
+ * <pre>
+ * AccessSdk sdk = AccessSdk.builder().host("api.kountaccess.com").merchantId(100100).apiKey(apiKey)
+ * 		.maxConnections(50).connectTimeout(500).socketTimeout(2000).build();
+ * </pre>
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class AccessSdkBuilder {
+	private static final Logger logger = LogManager.getLogger(AccessSdkBuilder.class);
+
+	String host;
+
+	/**
+	 * The host and the failover hosts, or null for the host alone
+	 */
+	List<String> hosts;
+
+	int merchantId;
+
+	String apiKey;
+
+	String version = AccessSdkConfig.DEFAULT_VERSION;
+
+	int maxConnections = AccessSdk.DEFAULT_MAX_CONNECTIONS;
+
+	int connectTimeoutMillis = AccessSdkConfig.DEFAULT_TIMEOUT;
+
+	int socketTimeoutMillis = AccessSdkConfig.DEFAULT_TIMEOUT;
+
+	int connectionRequestTimeoutMillis = AccessSdkConfig.DEFAULT_TIMEOUT;
+
+	boolean contentCompression = true;
+
+	SSLContext sslContext;
+
+	CloseableHttpClient httpClient;
+
+	ExecutorService executor;
+
+	long prefetchTtlMillis = PrefetchCache.DEFAULT_TTL_MILLIS;
+
+	int prefetchMaxEntries = PrefetchCache.DEFAULT_MAX_ENTRIES;
+
+	int defaultConcurrency = BoundedParallel.DEFAULT_CONCURRENCY;
+
+	AccessMetrics metrics;
+
+	final List<AccessInterceptor> interceptors = new ArrayList<>();
+
+	boolean trustWriteBehind;
+
+	File trustJournal;
+
+	int trustQueueCapacity = TrustWriteBehind.DEFAULT_CAPACITY;
+
+	int trustWorkers = TrustWriteBehind.DEFAULT_WORKERS;
+
+	boolean collapseTrustUpdates;
+
+	int warmUpConnections;
+
+	int validateAfterInactivityMillis = AccessSdkConfig.DEFAULT_VALIDATE_AFTER_INACTIVITY;
+
+	int keepAliveConnections;
+
+	long keepAliveIntervalMillis;
+
+	long keepAliveMaxIdleMillis;
+
+	int fairQueueMaxInFlight;
+
+	final Map<String, Integer> tagWeights = new HashMap<>();
+
+	int adaptiveMinLimit;
+
+	int adaptiveMaxLimit;
+
+	long dnsTtlMillis = AccessSdkConfig.DEFAULT_DNS_TTL;
+
+	long dnsMaxStaleMillis = AccessSdkConfig.DEFAULT_DNS_MAX_STALE;
+
+	AccessSdkBuilder() {
+	}
+
+	/**
+	 * Starts from the values of a configuration.
+	 */
+	AccessSdkBuilder(AccessSdkConfig config) {
+		this.host = config.getHost();
+		this.hosts = new ArrayList<>(config.getHosts());
+		this.merchantId = config.getMerchantId();
+		this.apiKey = config.getApiKey();
+		this.version = config.getVersion();
+		this.maxConnections = config.getMaxConnections();
+		this.connectTimeoutMillis = config.getConnectTimeoutMillis();
+		this.socketTimeoutMillis = config.getSocketTimeoutMillis();
+		this.connectionRequestTimeoutMillis = config.getConnectionRequestTimeoutMillis();
+		this.contentCompression = config.isContentCompression();
+		this.sslContext = config.getSslContext();
+		this.httpClient = config.getHttpClient();
+		this.executor = config.getExecutor();
+		this.prefetchTtlMillis = config.getPrefetchTtlMillis();
+		this.prefetchMaxEntries = config.getPrefetchMaxEntries();
+		this.defaultConcurrency = config.getDefaultConcurrency();
+		this.metrics = config.getMetrics();
+		this.interceptors.addAll(config.getInterceptors());
+		this.trustWriteBehind = config.isTrustWriteBehind();
+		this.trustJournal = config.getTrustJournal();
+		this.trustQueueCapacity = config.getTrustQueueCapacity();
+		this.trustWorkers = config.getTrustWorkers();
+		this.collapseTrustUpdates = config.isCollapseTrustUpdates();
+		this.warmUpConnections = config.getWarmUpConnections();
+		this.validateAfterInactivityMillis = config.getValidateAfterInactivityMillis();
+		this.keepAliveConnections = config.getKeepAliveConnections();
+		this.keepAliveIntervalMillis = config.getKeepAliveIntervalMillis();
+		this.keepAliveMaxIdleMillis = config.getKeepAliveMaxIdleMillis();
+		this.fairQueueMaxInFlight = config.getFairQueueMaxInFlight();
+		this.tagWeights.putAll(config.getTagWeights());
+		this.adaptiveMinLimit = config.getAdaptiveMinLimit();
+		this.adaptiveMaxLimit = config.getAdaptiveMaxLimit();
+		this.dnsTtlMillis = config.getDnsTtlMillis();
+		this.dnsMaxStaleMillis = config.getDnsMaxStaleMillis();
+	}
+
+	/**
+	 * @param host
+	 *            FQDN of the Access server, optionally with a port (e.g. api.kountaccess.com).
+	 */
+	public AccessSdkBuilder host(String host) {
+		this.host = host;
+		this.hosts = null;
+		return this;
+	}
+
+	/**
+	 * Sends the calls to several Access hosts, e.g. regional endpoints or a primary and a backup: each request goes to
+	 * the host with the lowest expected latency, from the round trip times measured and the requests in flight, and a
+	 * host that can't be connected to or keeps failing is left out for a backoff period. A request that couldn't be
+	 * connected is sent again right away to the next host, since nothing reached the server. The warm-up and the
+	 * keep-alive of the pool only open connections to the first host.
+	 *
+	 * @param hosts
+	 *            FQDNs of the Access servers, optionally with a port, in order of preference while their latency is
+	 *            unknown.
+	 */
+	public AccessSdkBuilder hosts(String... hosts) {
+		this.host = ((hosts != null) && (hosts.length > 0)) ? hosts[0] : null;
+		this.hosts = (hosts != null) ? new ArrayList<>(Arrays.asList(hosts)) : null;
+		return this;
+	}
+
+	/**
+	 * @param merchantId
+	 *            Merchant ID (6 digit value).
+	 */
+	public AccessSdkBuilder merchantId(int merchantId) {
+		this.merchantId = merchantId;
+		return this;
+	}
+
+	/**
+	 * @param apiKey
+	 *            The API Key for the merchant.
+	 */
+	public AccessSdkBuilder apiKey(String apiKey) {
+		this.apiKey = apiKey;
+		return this;
+	}
+
+	/**
+	 * @param version
+	 *            The version of the API responses (default {@value AccessSdkConfig#DEFAULT_VERSION}).
+	 */
+	public AccessSdkBuilder version(String version) {
+		this.version = version;
+		return this;
+	}
+
+	/**
+	 * @param maxConnections
+	 *            Maximum number of pooled connections to the Access server (default 20).
+	 */
+	public AccessSdkBuilder maxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		return this;
+	}
+
+	/**
+	 * @param millis
+	 *            Timeout to open a connection, or {@link AccessSdkConfig#DEFAULT_TIMEOUT}.
+	 */
+	public AccessSdkBuilder connectTimeout(int millis) {
+		this.connectTimeoutMillis = millis;
+		return this;
+	}
+
+	/**
+	 * @param millis
+	 *            Timeout waiting for data from the server, or {@link AccessSdkConfig#DEFAULT_TIMEOUT}.
+	 */
+	public AccessSdkBuilder socketTimeout(int millis) {
+		this.socketTimeoutMillis = millis;
+		return this;
+	}
+
+	/**
+	 * @param millis
+	 *            Timeout waiting for a pooled connection, or {@link AccessSdkConfig#DEFAULT_TIMEOUT}.
+	 */
+	public AccessSdkBuilder connectionRequestTimeout(int millis) {
+		this.connectionRequestTimeoutMillis = millis;
+		return this;
+	}
+
+	/**
+	 * @param contentCompression
+	 *            Whether gzip/deflate compressed responses are requested (default true).
+	 */
+	public AccessSdkBuilder contentCompression(boolean contentCompression) {
+		this.contentCompression = contentCompression;
+		return this;
+	}
+
+	/**
+	 * @param sslContext
+	 *            SSL context of the connections, e.g. with a custom trust store (default: the JVM default).
+	 */
+	public AccessSdkBuilder sslContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+		return this;
+	}
+
+	/**
+	 * Replaces the pooled HTTP client of the SDK, e.g. to go through a proxy. The client is shared by all the calls
+	 * and must be thread-safe; the pool size, SSL context and phase timing options don't apply to it.
+	 *
+	 * @param httpClient
+	 *            The client, or null for the pooled client of the SDK.
+	 */
+	public AccessSdkBuilder httpClient(CloseableHttpClient httpClient) {
+		this.httpClient = httpClient;
+		return this;
+	}
+
+	/**
+	 * @param executor
+	 *            Executor of the asynchronous work (prefetch, async bulk updates, batch lookups), owned by the
+	 *            caller; null for a cached thread pool of the SDK.
+	 */
+	public AccessSdkBuilder executor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * @param ttlMillis
+	 *            How long prefetched responses are kept.
+	 * @param maxEntries
+	 *            Maximum number of prefetched sessions.
+	 */
+	public AccessSdkBuilder prefetchCache(long ttlMillis, int maxEntries) {
+		this.prefetchTtlMillis = ttlMillis;
+		this.prefetchMaxEntries = maxEntries;
+		return this;
+	}
+
+	/**
+	 * @param defaultConcurrency
+	 *            Requests in flight of the bulk updates and batch lookups without explicit concurrency (default 8).
+	 */
+	public AccessSdkBuilder defaultConcurrency(int defaultConcurrency) {
+		this.defaultConcurrency = defaultConcurrency;
+		return this;
+	}
+
+	/**
+	 * @param metrics
+	 *            Listener notified of every call, see {@link AccessSdk#setMetrics(AccessMetrics)}.
+	 */
+	public AccessSdkBuilder metrics(AccessMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * @param interceptor
+	 *            Interceptor added after the ones already added, see
+	 *            {@link AccessSdk#addInterceptor(AccessInterceptor)}.
+	 */
+	public AccessSdkBuilder interceptor(AccessInterceptor interceptor) {
+		this.interceptors.add(interceptor);
+		return this;
+	}
+
+	/**
+	 * Sends the trust updates in the asynchronous write-behind mode, see
+	 * {@link AccessSdk#enableTrustWriteBehind(File, int, int, boolean)}.
+	 *
+	 * @param journal
+	 *            The journal file, or null if the queued updates don't have to survive a restart.
+	 * @param queueCapacity
+	 *            The maximum number of queued updates.
+	 * @param workers
+	 *            The number of background workers sending the updates.
+	 * @param collapseUpdates
+	 *            If true, only the latest queued state per device (or session) and uniq is sent.
+	 */
+	public AccessSdkBuilder trustWriteBehind(File journal, int queueCapacity, int workers, boolean collapseUpdates) {
+		this.trustWriteBehind = true;
+		this.trustJournal = journal;
+		this.trustQueueCapacity = queueCapacity;
+		this.trustWorkers = workers;
+		this.collapseTrustUpdates = collapseUpdates;
+		return this;
+	}
+
+	/**
+	 * Warms the SDK up when it is built, see {@link AccessSdk#warmUp(int)}. A failure to connect is logged, not
+	 * thrown, so the application still starts if the Access host is not reachable yet.
+	 *
+	 * @param connections
+	 *            The number of pooled connections to open (default 0: the code is not warmed up either).
+	 */
+	public AccessSdkBuilder warmUpConnections(int connections) {
+		this.warmUpConnections = connections;
+		return this;
+	}
+
+	/**
+	 * @param millis
+	 *            Idle time after which a pooled connection is checked before it is leased, so a connection closed by
+	 *            the server is replaced instead of failing the call (default
+	 *            {@value AccessSdkConfig#DEFAULT_VALIDATE_AFTER_INACTIVITY}ms). The check blocks for up to a
+	 *            millisecond, so connections in steady use are not checked; 0 never checks them.
+	 */
+	public AccessSdkBuilder validateAfterInactivity(int millis) {
+		this.validateAfterInactivityMillis = millis;
+		return this;
+	}
+
+	/**
+	 * Keeps pooled connections to the Access host open through the idle periods, with a background thread and TCP
+	 * keep-alive on the sockets. Every interval the connections idle for longer than {@code maxIdleMillis} are closed
+	 * and, while no call is in flight, the pool is topped up to {@code minConnections} connections. Set the maximum
+	 * idle time below the shortest idle timeout between the SDK and the Access host (server, load balancer, NAT),
+	 * e.g. 50 seconds for a 60 seconds timeout, so the connections are replaced before they are dropped silently. No
+	 * request is sent to the server, and it doesn't apply to a custom HTTP client.
+	 *
+	 * @param minConnections
+	 *            The number of connections kept open, at most the pool size.
+	 * @param intervalMillis
+	 *            The delay between two checks of the pool.
+	 * @param maxIdleMillis
+	 *            The idle time after which a connection is replaced, 0 to keep it until it breaks.
+	 */
+	public AccessSdkBuilder keepAlive(int minConnections, long intervalMillis, long maxIdleMillis) {
+		this.keepAliveConnections = minConnections;
+		this.keepAliveIntervalMillis = intervalMillis;
+		this.keepAliveMaxIdleMillis = maxIdleMillis;
+		return this;
+	}
+
+	/**
+	 * Sends the requests through a dispatch queue bounding the requests in flight, so a noisy caller (e.g. a bulk
+	 * export) can't delay the latency critical calls of the others. Waiting requests are dispatched by priority class
+	 * and, within a class, by weighted fair queueing between their tags (the merchant ID by default), see
+	 * {@link AccessSdk#withOptions(CallOptions)}. A request waits at most the connection request timeout, if any.
+	 *
+	 * @param maxInFlight
+	 *            The maximum number of requests in flight, usually the pool size; 0 to send the requests directly
+	 *            (default).
+	 */
+	public AccessSdkBuilder fairQueueing(int maxInFlight) {
+		this.fairQueueMaxInFlight = maxInFlight;
+		return this;
+	}
+
+	/**
+	 * @param tag
+	 *            A fairness tag, see {@link CallOptions#withTag(String)}, or the merchant ID of a tenant.
+	 * @param weight
+	 *            Its share of the requests in flight relative to the other tags waiting (default 1).
+	 */
+	public AccessSdkBuilder tagWeight(String tag, int weight) {
+		this.tagWeights.put(tag, weight);
+		return this;
+	}
+
+	/**
+	 * Adapts the bound of the requests in flight of the dispatch queue (see {@link #fairQueueing(int)}, enabled by
+	 * this option) to the round trip times measured, instead of a fixed bound: it grows while the round trip times
+	 * stay close to their long term average, and shrinks when they go up or requests fail with a network error, a
+	 * 429 or a 5xx, e.g. during an upstream brownout. It starts from the fair queueing bound, or else the pool size.
+	 * Once as many requests are waiting as the bound allows in flight, the next ones are rejected right away with
+	 * {@link AccessErrorType#REJECTED} instead of tying up more threads.
+	 *
+	 * @param minLimit
+	 *            The lowest bound.
+	 * @param maxLimit
+	 *            The highest bound, usually the pool size.
+	 */
+	public AccessSdkBuilder adaptiveConcurrency(int minLimit, int maxLimit) {
+		this.adaptiveMinLimit = minLimit;
+		this.adaptiveMaxLimit = maxLimit;
+		return this;
+	}
+
+	/**
+	 * Caches the addresses of the Access hosts in the SDK, whatever the DNS caching settings of the JVM (by default
+	 * for {@value AccessSdkConfig#DEFAULT_DNS_TTL}ms, used for up to {@value AccessSdkConfig#DEFAULT_DNS_MAX_STALE}ms
+	 * more while the lookups fail). The addresses are looked up again in the background before they expire, so the
+	 * new pooled connections don't wait for DNS, and a failing DNS server doesn't fail the calls. Not used with a
+	 * custom HTTP client.
+	 *
+	 * @param ttlMillis
+	 *            Time to live of the addresses found, 0 to look the hosts up on every new connection.
+	 * @param maxStaleMillis
+	 *            How long the expired addresses of a host are still used while its lookups fail.
+	 */
+	public AccessSdkBuilder dnsCache(long ttlMillis, long maxStaleMillis) {
+		this.dnsTtlMillis = ttlMillis;
+		this.dnsMaxStaleMillis = maxStaleMillis;
+		return this;
+	}
+
+	/**
+	 * Validates the values.
+	 *
+	 * @return the configuration, to build any number of SDK instances with
+	 *         {@link AccessSdk#AccessSdk(AccessSdkConfig)}.
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid ({@link AccessErrorType#INVALID_DATA}).
+	 */
+	public AccessSdkConfig buildConfig() throws AccessException {
+		if ((host == null) || host.isEmpty()) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing host");
+		}
+		if (hosts != null) {
+			for (String failover : hosts) {
+				if ((failover == null) || failover.isEmpty()) {
+					throw new AccessException(AccessErrorType.INVALID_DATA, "Missing host");
+				}
+				if (hosts.indexOf(failover) != hosts.lastIndexOf(failover)) {
+					throw new AccessException(AccessErrorType.INVALID_DATA, "Duplicate host (" + failover + ")");
+				}
+			}
+		}
+		if (apiKey == null) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing apiKey");
+		}
+		if (apiKey.trim().isEmpty()) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid apiKey(" + apiKey + ")");
+		}
+		if ((merchantId < 100000) || (merchantId > 999999)) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid merchantId");
+		}
+		if (maxConnections < 1) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid maxConnections (" + maxConnections + ").  Must be a positive integer.");
+		}
+		verifyTimeout("connectTimeout", connectTimeoutMillis);
+		verifyTimeout("socketTimeout", socketTimeoutMillis);
+		verifyTimeout("connectionRequestTimeout", connectionRequestTimeoutMillis);
+		if ((prefetchTtlMillis < 1) || (prefetchMaxEntries < 0)) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid prefetch cache ttl (" + prefetchTtlMillis
+					+ ") or maxEntries (" + prefetchMaxEntries + ").");
+		}
+		if (defaultConcurrency < 1) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid defaultConcurrency (" + defaultConcurrency + ").  Must be a positive integer.");
+		}
+		if (interceptors.contains(null)) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Missing interceptor");
+		}
+		if (warmUpConnections < 0) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid warmUpConnections (" + warmUpConnections + ").  Must be a positive integer or 0.");
+		}
+		if (validateAfterInactivityMillis < 0) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid validateAfterInactivity ("
+					+ validateAfterInactivityMillis + ").  Must be a positive integer or 0.");
+		}
+		if ((keepAliveConnections < 0) || ((keepAliveConnections > 0) && (keepAliveIntervalMillis < 1))
+				|| (keepAliveMaxIdleMillis < 0)) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid keepAlive minConnections ("
+					+ keepAliveConnections + "), interval (" + keepAliveIntervalMillis + ") or maxIdle ("
+					+ keepAliveMaxIdleMillis + ").");
+		}
+		if (fairQueueMaxInFlight < 0) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid fairQueueing maxInFlight ("
+					+ fairQueueMaxInFlight + ").  Must be a positive integer or 0.");
+		}
+		if (((adaptiveMinLimit != 0) || (adaptiveMaxLimit != 0))
+				&& ((adaptiveMinLimit < 1) || (adaptiveMaxLimit < adaptiveMinLimit))) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid adaptiveConcurrency minLimit ("
+					+ adaptiveMinLimit + ") or maxLimit (" + adaptiveMaxLimit + ").");
+		}
+		if ((dnsTtlMillis < 0) || (dnsMaxStaleMillis < 0)) {
+			throw new AccessException(AccessErrorType.INVALID_DATA, "Invalid dnsCache ttl (" + dnsTtlMillis
+					+ ") or maxStale (" + dnsMaxStaleMillis + ").  Must be positive integers or 0.");
+		}
+		for (Map.Entry<String, Integer> weight : tagWeights.entrySet()) {
+			if ((weight.getKey() == null) || (weight.getValue() == null) || (weight.getValue() < 1)) {
+				throw new AccessException(AccessErrorType.INVALID_DATA,
+						"Invalid tagWeight (" + weight.getKey() + "=" + weight.getValue() + ").");
+			}
+		}
+		if (trustWriteBehind && ((trustQueueCapacity < 1) || (trustWorkers < 1))) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid queueCapacity (" + trustQueueCapacity + ") or workers (" + trustWorkers + ").");
+		}
+		return new AccessSdkConfig(this);
+	}
+
+	/**
+	 * Validates the values, creates the SDK and warms it up if configured.
+	 *
+	 * @throws AccessException
+	 *             Thrown if any of the values are invalid ({@link AccessErrorType#INVALID_DATA}) or the trust journal
+	 *             can't be opened.
+	 */
+	public AccessSdk build() throws AccessException {
+		AccessSdkConfig config = buildConfig();
+		AccessSdk sdk = new AccessSdk(config);
+		if (config.getWarmUpConnections() > 0) {
+			try {
+				sdk.warmUp(config.getWarmUpConnections());
+			} catch (AccessException e) {
+				logger.warn("Access SDK warm-up failed, the first calls open their own connections", e);
+			}
+		}
+		return sdk;
+	}
+
+	private static void verifyTimeout(String name, int millis) throws AccessException {
+		if (millis < AccessSdkConfig.DEFAULT_TIMEOUT) {
+			throw new AccessException(AccessErrorType.INVALID_DATA,
+					"Invalid " + name + " (" + millis + ").  Must be -1 (system default), 0 (none) or positive.");
+		}
+	}
+}
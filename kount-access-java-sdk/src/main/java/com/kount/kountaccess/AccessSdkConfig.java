@@ -0,0 +1,393 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+
+/**
+ * Immutable configuration of an {@link AccessSdk}, validated once by {@link AccessSdkBuilder#buildConfig()}. The same
+ * configuration can be used by any number of instances and threads.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public final class AccessSdkConfig {
+
+	/**
+	 * Default version of the API responses.
+	 */
+	public static final String DEFAULT_VERSION = "0400";
+
+	/**
+	 * Timeout meaning the system default (no timeout for the connect and socket timeouts).
+	 */
+	public static final int DEFAULT_TIMEOUT = -1;
+
+	/**
+	 * Default idle time after which a pooled connection is checked before it is leased.
+	 */
+	public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+	/**
+	 * Default time to live of the cached addresses of the Access hosts.
+	 */
+	public static final long DEFAULT_DNS_TTL = 60000;
+
+	/**
+	 * Default time the expired addresses of an Access host are still used while its lookups fail.
+	 */
+	public static final long DEFAULT_DNS_MAX_STALE = 600000;
+
+	private final String host;
+
+	private final List<String> hosts;
+
+	private final int merchantId;
+
+	private final String apiKey;
+
+	private final String version;
+
+	private final int maxConnections;
+
+	private final int connectTimeoutMillis;
+
+	private final int socketTimeoutMillis;
+
+	private final int connectionRequestTimeoutMillis;
+
+	private final boolean contentCompression;
+
+	private final SSLContext sslContext;
+
+	private final CloseableHttpClient httpClient;
+
+	private final ExecutorService executor;
+
+	private final long prefetchTtlMillis;
+
+	private final int prefetchMaxEntries;
+
+	private final int defaultConcurrency;
+
+	private final AccessMetrics metrics;
+
+	private final List<AccessInterceptor> interceptors;
+
+	private final boolean trustWriteBehind;
+
+	private final File trustJournal;
+
+	private final int trustQueueCapacity;
+
+	private final int trustWorkers;
+
+	private final boolean collapseTrustUpdates;
+
+	private final int warmUpConnections;
+
+	private final int validateAfterInactivityMillis;
+
+	private final int keepAliveConnections;
+
+	private final long keepAliveIntervalMillis;
+
+	private final long keepAliveMaxIdleMillis;
+
+	private final int fairQueueMaxInFlight;
+
+	private final Map<String, Integer> tagWeights;
+
+	private final int adaptiveMinLimit;
+
+	private final int adaptiveMaxLimit;
+
+	private final long dnsTtlMillis;
+
+	private final long dnsMaxStaleMillis;
+
+	AccessSdkConfig(AccessSdkBuilder builder) {
+		this.host = builder.host;
+		this.hosts = Collections.unmodifiableList(
+				(builder.hosts != null) ? new ArrayList<>(builder.hosts) : Collections.singletonList(builder.host));
+		this.merchantId = builder.merchantId;
+		this.apiKey = builder.apiKey;
+		this.version = builder.version;
+		this.maxConnections = builder.maxConnections;
+		this.connectTimeoutMillis = builder.connectTimeoutMillis;
+		this.socketTimeoutMillis = builder.socketTimeoutMillis;
+		this.connectionRequestTimeoutMillis = builder.connectionRequestTimeoutMillis;
+		this.contentCompression = builder.contentCompression;
+		this.sslContext = builder.sslContext;
+		this.httpClient = builder.httpClient;
+		this.executor = builder.executor;
+		this.prefetchTtlMillis = builder.prefetchTtlMillis;
+		this.prefetchMaxEntries = builder.prefetchMaxEntries;
+		this.defaultConcurrency = builder.defaultConcurrency;
+		this.metrics = builder.metrics;
+		this.interceptors = Collections.unmodifiableList(new ArrayList<>(builder.interceptors));
+		this.trustWriteBehind = builder.trustWriteBehind;
+		this.trustJournal = builder.trustJournal;
+		this.trustQueueCapacity = builder.trustQueueCapacity;
+		this.trustWorkers = builder.trustWorkers;
+		this.collapseTrustUpdates = builder.collapseTrustUpdates;
+		this.warmUpConnections = builder.warmUpConnections;
+		this.validateAfterInactivityMillis = builder.validateAfterInactivityMillis;
+		this.keepAliveConnections = builder.keepAliveConnections;
+		this.keepAliveIntervalMillis = builder.keepAliveIntervalMillis;
+		this.keepAliveMaxIdleMillis = builder.keepAliveMaxIdleMillis;
+		this.fairQueueMaxInFlight = builder.fairQueueMaxInFlight;
+		this.tagWeights = Collections.unmodifiableMap(new HashMap<>(builder.tagWeights));
+		this.adaptiveMinLimit = builder.adaptiveMinLimit;
+		this.adaptiveMaxLimit = builder.adaptiveMaxLimit;
+		this.dnsTtlMillis = builder.dnsTtlMillis;
+		this.dnsMaxStaleMillis = builder.dnsMaxStaleMillis;
+	}
+
+	/**
+	 * @return the host name (and port) of the Access server.
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return the host names (and ports) of the Access servers, the first one being {@link #getHost()}.
+	 */
+	public List<String> getHosts() {
+		return hosts;
+	}
+
+	public int getMerchantId() {
+		return merchantId;
+	}
+
+	public String getApiKey() {
+		return apiKey;
+	}
+
+	/**
+	 * @return the version of the API responses.
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the maximum number of pooled connections to the Access server.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * @return the timeout to open a connection, or {@link #DEFAULT_TIMEOUT}.
+	 */
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	/**
+	 * @return the timeout waiting for data, or {@link #DEFAULT_TIMEOUT}.
+	 */
+	public int getSocketTimeoutMillis() {
+		return socketTimeoutMillis;
+	}
+
+	/**
+	 * @return the timeout waiting for a pooled connection, or {@link #DEFAULT_TIMEOUT}.
+	 */
+	public int getConnectionRequestTimeoutMillis() {
+		return connectionRequestTimeoutMillis;
+	}
+
+	/**
+	 * @return true if gzip/deflate compressed responses are requested.
+	 */
+	public boolean isContentCompression() {
+		return contentCompression;
+	}
+
+	/**
+	 * @return the SSL context of the connections, or null for the default one.
+	 */
+	public SSLContext getSslContext() {
+		return sslContext;
+	}
+
+	/**
+	 * @return the HTTP client used instead of the pooled client of the SDK, or null.
+	 */
+	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * @return the executor of the asynchronous work, or null for an executor of the SDK.
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @return how long prefetched responses are kept.
+	 */
+	public long getPrefetchTtlMillis() {
+		return prefetchTtlMillis;
+	}
+
+	/**
+	 * @return the maximum number of prefetched sessions.
+	 */
+	public int getPrefetchMaxEntries() {
+		return prefetchMaxEntries;
+	}
+
+	/**
+	 * @return the number of requests in flight of the bulk updates and batch lookups without explicit concurrency.
+	 */
+	public int getDefaultConcurrency() {
+		return defaultConcurrency;
+	}
+
+	/**
+	 * @return the listener of the calls, or null if the calls are not measured.
+	 */
+	public AccessMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the interceptors around the calls, in order.
+	 */
+	public List<AccessInterceptor> getInterceptors() {
+		return interceptors;
+	}
+
+	/**
+	 * @return true if the trust updates are sent in the asynchronous write-behind mode.
+	 */
+	public boolean isTrustWriteBehind() {
+		return trustWriteBehind;
+	}
+
+	/**
+	 * @return the journal of the queued trust updates, or null.
+	 */
+	public File getTrustJournal() {
+		return trustJournal;
+	}
+
+	public int getTrustQueueCapacity() {
+		return trustQueueCapacity;
+	}
+
+	public int getTrustWorkers() {
+		return trustWorkers;
+	}
+
+	public boolean isCollapseTrustUpdates() {
+		return collapseTrustUpdates;
+	}
+
+	/**
+	 * @return the number of connections opened by {@link AccessSdkBuilder#build()}, 0 if the SDK is not warmed up.
+	 */
+	public int getWarmUpConnections() {
+		return warmUpConnections;
+	}
+
+	/**
+	 * @return the idle time after which a pooled connection is checked before it is leased, 0 if never.
+	 */
+	public int getValidateAfterInactivityMillis() {
+		return validateAfterInactivityMillis;
+	}
+
+	/**
+	 * @return the number of connections kept open through the idle periods, 0 if the connections are not kept alive.
+	 */
+	public int getKeepAliveConnections() {
+		return keepAliveConnections;
+	}
+
+	/**
+	 * @return the delay between two checks of the pool by the keep-alive.
+	 */
+	public long getKeepAliveIntervalMillis() {
+		return keepAliveIntervalMillis;
+	}
+
+	/**
+	 * @return the idle time after which the keep-alive replaces a connection, 0 if never.
+	 */
+	public long getKeepAliveMaxIdleMillis() {
+		return keepAliveMaxIdleMillis;
+	}
+
+	/**
+	 * @return the maximum number of requests in flight of the dispatch queue, 0 if the requests are sent directly.
+	 */
+	public int getFairQueueMaxInFlight() {
+		return fairQueueMaxInFlight;
+	}
+
+	/**
+	 * @return the weights of the fairness tags of the dispatch queue.
+	 */
+	public Map<String, Integer> getTagWeights() {
+		return tagWeights;
+	}
+
+	/**
+	 * @return the lowest adaptive bound of the requests in flight, 0 if the bound is not adaptive.
+	 */
+	public int getAdaptiveMinLimit() {
+		return adaptiveMinLimit;
+	}
+
+	/**
+	 * @return the highest adaptive bound of the requests in flight, 0 if the bound is not adaptive.
+	 */
+	public int getAdaptiveMaxLimit() {
+		return adaptiveMaxLimit;
+	}
+
+	/**
+	 * @return the time to live of the cached addresses of the Access hosts, 0 if they are not cached.
+	 */
+	public long getDnsTtlMillis() {
+		return dnsTtlMillis;
+	}
+
+	/**
+	 * @return how long the expired addresses of an Access host are still used while its lookups fail.
+	 */
+	public long getDnsMaxStaleMillis() {
+		return dnsMaxStaleMillis;
+	}
+
+	@Override
+	public String toString() {
+		// no API key
+		return "host = " + ((hosts.size() > 1) ? hosts : host) + ", merchantId = " + merchantId + ", version = "
+				+ version + ", maxConnections = " + maxConnections + ", connectTimeout = " + connectTimeoutMillis
+				+ "ms, socketTimeout = " + socketTimeoutMillis + "ms, connectionRequestTimeout = "
+				+ connectionRequestTimeoutMillis
+				+ "ms, contentCompression = " + contentCompression + ", validateAfterInactivity = "
+				+ validateAfterInactivityMillis + "ms, keepAliveConnections = " + keepAliveConnections
+				+ ", fairQueueing = " + fairQueueMaxInFlight + ", adaptiveConcurrency = " + adaptiveMinLimit + "-"
+				+ adaptiveMaxLimit + ", dnsTtl = " + dnsTtlMillis + "ms, trustWriteBehind = " + trustWriteBehind;
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.Map;
+
+/**
+ * Management interface of an {@link AccessSdk}, registered with {@link AccessSdk#registerMBean()}. Exposes the state
+ * of the connection pool, the prefetch cache and the trust updates, the latency and errors per endpoint when the
+ * metrics are a {@link HistogramAccessMetrics}, and lets the pool size, timeouts, default concurrency and bound of the
+ * dispatch queue be changed at runtime.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public interface AccessSdkMXBean {
+
+	int getMerchantId();
+
+	/**
+	 * @return the number of pooled connections in use by calls.
+	 */
+	int getLeasedConnections();
+
+	/**
+	 * @return the number of idle pooled connections.
+	 */
+	int getAvailableConnections();
+
+	/**
+	 * @return the number of calls waiting for a pooled connection.
+	 */
+	int getPendingConnections();
+
+	/**
+	 * @return the maximum number of pooled connections.
+	 */
+	int getMaxConnections();
+
+	void setMaxConnections(int maxConnections);
+
+	/**
+	 * @return the timeout to open a connection, in milliseconds, 0 for none or -1 for the system default.
+	 */
+	int getConnectTimeoutMillis();
+
+	void setConnectTimeoutMillis(int timeout);
+
+	/**
+	 * @return the timeout waiting for data from the server, in milliseconds, 0 for none or -1 for the system default.
+	 */
+	int getSocketTimeoutMillis();
+
+	void setSocketTimeoutMillis(int timeout);
+
+	/**
+	 * @return the timeout waiting for a pooled connection, in milliseconds, 0 for none or -1 for the default.
+	 */
+	int getConnectionRequestTimeoutMillis();
+
+	void setConnectionRequestTimeoutMillis(int timeout);
+
+	/**
+	 * @return the number of requests in flight of the bulk trust updates and batch lookups without explicit
+	 *         concurrency.
+	 */
+	int getDefaultConcurrency();
+
+	void setDefaultConcurrency(int concurrency);
+
+	/**
+	 * @return the number of responses in the prefetch cache.
+	 */
+	int getPrefetchCacheSize();
+
+	long getPrefetchHits();
+
+	long getPrefetchMisses();
+
+	/**
+	 * @return the ratio of the prefetch cache lookups that found a prefetched response, 0 if there were none.
+	 */
+	double getPrefetchHitRatio();
+
+	/**
+	 * @return the number of trust updates queued or being sent in the write-behind mode.
+	 */
+	int getPendingTrustUpdates();
+
+	/**
+	 * @return the number of calls in flight, or -1 if the metrics are not a {@link HistogramAccessMetrics}.
+	 */
+	int getInFlightCalls();
+
+	/**
+	 * @return the current bound of the requests in flight of the dispatch queue, or -1 if it's not enabled.
+	 */
+	int getConcurrencyLimit();
+
+	/**
+	 * Changes the fixed bound of the requests in flight of the dispatch queue, see
+	 * {@link AccessSdkBuilder#fairQueueing(int)}. An adaptive bound is changed through its minimum and maximum.
+	 */
+	void setConcurrencyLimit(int limit);
+
+	/**
+	 * @return the lowest adaptive bound of the requests in flight, or -1 if the bound is not adaptive.
+	 */
+	int getMinConcurrencyLimit();
+
+	void setMinConcurrencyLimit(int limit);
+
+	/**
+	 * @return the highest adaptive bound of the requests in flight, or -1 if the bound is not adaptive.
+	 */
+	int getMaxConcurrencyLimit();
+
+	void setMaxConcurrencyLimit(int limit);
+
+	/**
+	 * @return the number of calls waiting in the dispatch queue.
+	 */
+	int getQueuedCalls();
+
+	/**
+	 * @return the number of calls per endpoint.
+	 */
+	Map<String, Long> getCallCounts();
+
+	/**
+	 * @return the number of failed calls per endpoint.
+	 */
+	Map<String, Long> getErrorCounts();
+
+	/**
+	 * @return the median latency per endpoint, in microseconds.
+	 */
+	Map<String, Long> getLatencyP50Micros();
+
+	/**
+	 * @return the 99th percentile latency per endpoint, in microseconds.
+	 */
+	Map<String, Long> getLatencyP99Micros();
+
+	/**
+	 * @return the 99.9th percentile latency per endpoint, in microseconds.
+	 */
+	Map<String, Long> getLatencyP999Micros();
+}
@@ -0,0 +1,281 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * The {@link AccessSdkMXBean} of an {@link AccessSdk}.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class AccessSdkManagement implements AccessSdkMXBean {
+
+	private final AccessSdk sdk;
+
+	AccessSdkManagement(AccessSdk sdk) {
+		this.sdk = sdk;
+	}
+
+	@Override
+	public int getMerchantId() {
+		return sdk.getMerchantId();
+	}
+
+	@Override
+	public int getLeasedConnections() {
+		PoolStats stats = sdk.getPoolStats();
+		return (stats != null) ? stats.getLeased() : 0;
+	}
+
+	@Override
+	public int getAvailableConnections() {
+		PoolStats stats = sdk.getPoolStats();
+		return (stats != null) ? stats.getAvailable() : 0;
+	}
+
+	@Override
+	public int getPendingConnections() {
+		PoolStats stats = sdk.getPoolStats();
+		return (stats != null) ? stats.getPending() : 0;
+	}
+
+	@Override
+	public int getMaxConnections() {
+		return sdk.getMaxConnections();
+	}
+
+	@Override
+	public void setMaxConnections(int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("Invalid maxConnections (" + maxConnections + ")");
+		}
+		sdk.setMaxConnections(maxConnections);
+	}
+
+	@Override
+	public int getConnectTimeoutMillis() {
+		return sdk.getRequestConfig().getConnectTimeout();
+	}
+
+	@Override
+	public void setConnectTimeoutMillis(int timeout) {
+		verifyTimeout(timeout);
+		synchronized (sdk) {
+			sdk.setRequestConfig(RequestConfig.copy(sdk.getRequestConfig()).setConnectTimeout(timeout).build());
+		}
+	}
+
+	@Override
+	public int getSocketTimeoutMillis() {
+		return sdk.getRequestConfig().getSocketTimeout();
+	}
+
+	@Override
+	public void setSocketTimeoutMillis(int timeout) {
+		verifyTimeout(timeout);
+		synchronized (sdk) {
+			sdk.setRequestConfig(RequestConfig.copy(sdk.getRequestConfig()).setSocketTimeout(timeout).build());
+		}
+	}
+
+	@Override
+	public int getConnectionRequestTimeoutMillis() {
+		return sdk.getRequestConfig().getConnectionRequestTimeout();
+	}
+
+	@Override
+	public void setConnectionRequestTimeoutMillis(int timeout) {
+		verifyTimeout(timeout);
+		synchronized (sdk) {
+			sdk.setRequestConfig(
+					RequestConfig.copy(sdk.getRequestConfig()).setConnectionRequestTimeout(timeout).build());
+		}
+	}
+
+	@Override
+	public int getDefaultConcurrency() {
+		return sdk.getDefaultConcurrency();
+	}
+
+	@Override
+	public void setDefaultConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Invalid concurrency (" + concurrency + ")");
+		}
+		sdk.setDefaultConcurrency(concurrency);
+	}
+
+	@Override
+	public int getPrefetchCacheSize() {
+		return sdk.getPrefetchCache().size();
+	}
+
+	@Override
+	public long getPrefetchHits() {
+		return sdk.getPrefetchCache().getHits();
+	}
+
+	@Override
+	public long getPrefetchMisses() {
+		return sdk.getPrefetchCache().getMisses();
+	}
+
+	@Override
+	public double getPrefetchHitRatio() {
+		long hits = getPrefetchHits();
+		long total = hits + getPrefetchMisses();
+		return (total > 0) ? (double) hits / total : 0;
+	}
+
+	@Override
+	public int getPendingTrustUpdates() {
+		return sdk.getPendingTrustUpdates();
+	}
+
+	@Override
+	public int getInFlightCalls() {
+		HistogramAccessMetrics metrics = getHistogramMetrics();
+		return (metrics != null) ? metrics.getInFlight() : -1;
+	}
+
+	@Override
+	public int getConcurrencyLimit() {
+		FairScheduler scheduler = sdk.getScheduler();
+		return (scheduler != null) ? scheduler.getMaxInFlight() : -1;
+	}
+
+	@Override
+	public void setConcurrencyLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid limit (" + limit + ")");
+		}
+		getEnabledScheduler().setLimit(limit);
+	}
+
+	@Override
+	public int getMinConcurrencyLimit() {
+		GradientLimit limiter = getLimiter();
+		return (limiter != null) ? limiter.getMinLimit() : -1;
+	}
+
+	@Override
+	public void setMinConcurrencyLimit(int limit) {
+		FairScheduler scheduler = getEnabledScheduler();
+		synchronized (scheduler) {
+			setLimitRange(scheduler, limit, getMaxConcurrencyLimit());
+		}
+	}
+
+	@Override
+	public int getMaxConcurrencyLimit() {
+		GradientLimit limiter = getLimiter();
+		return (limiter != null) ? limiter.getMaxLimit() : -1;
+	}
+
+	@Override
+	public void setMaxConcurrencyLimit(int limit) {
+		FairScheduler scheduler = getEnabledScheduler();
+		synchronized (scheduler) {
+			setLimitRange(scheduler, getMinConcurrencyLimit(), limit);
+		}
+	}
+
+	@Override
+	public int getQueuedCalls() {
+		FairScheduler scheduler = sdk.getScheduler();
+		return (scheduler != null) ? scheduler.getWaiting() : 0;
+	}
+
+	@Override
+	public Map<String, Long> getCallCounts() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		HistogramAccessMetrics metrics = getHistogramMetrics();
+		if (metrics != null) {
+			for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+				result.put(endpoint.getName(), metrics.getCallCount(endpoint));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getErrorCounts() {
+		Map<String, Long> result = new LinkedHashMap<>();
+		HistogramAccessMetrics metrics = getHistogramMetrics();
+		if (metrics != null) {
+			for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+				result.put(endpoint.getName(), metrics.getErrorCount(endpoint));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP50Micros() {
+		return getLatencyMicros(50);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP99Micros() {
+		return getLatencyMicros(99);
+	}
+
+	@Override
+	public Map<String, Long> getLatencyP999Micros() {
+		return getLatencyMicros(99.9);
+	}
+
+	private Map<String, Long> getLatencyMicros(double percentile) {
+		Map<String, Long> result = new LinkedHashMap<>();
+		HistogramAccessMetrics metrics = getHistogramMetrics();
+		if (metrics != null) {
+			for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+				long nanos = metrics.getLatency(endpoint).getValueAtPercentile(percentile);
+				result.put(endpoint.getName(), TimeUnit.NANOSECONDS.toMicros(nanos));
+			}
+		}
+		return result;
+	}
+
+	private FairScheduler getEnabledScheduler() {
+		FairScheduler scheduler = sdk.getScheduler();
+		if (scheduler == null) {
+			throw new IllegalStateException("The dispatch queue is not enabled");
+		}
+		return scheduler;
+	}
+
+	private GradientLimit getLimiter() {
+		FairScheduler scheduler = sdk.getScheduler();
+		return (scheduler != null) ? scheduler.getLimiter() : null;
+	}
+
+	private static void setLimitRange(FairScheduler scheduler, int minLimit, int maxLimit) {
+		if (scheduler.getLimiter() == null) {
+			throw new IllegalStateException("The concurrency limit is not adaptive");
+		}
+		if ((minLimit < 1) || (maxLimit < minLimit)) {
+			throw new IllegalArgumentException("Invalid limits (" + minLimit + ", " + maxLimit + ")");
+		}
+		scheduler.setLimitRange(minLimit, maxLimit);
+	}
+
+	private HistogramAccessMetrics getHistogramMetrics() {
+		AccessMetrics metrics = sdk.getMetrics();
+		return (metrics instanceof HistogramAccessMetrics) ? (HistogramAccessMetrics) metrics : null;
+	}
+
+	private static void verifyTimeout(int timeout) {
+		if (timeout < -1) {
+			throw new IllegalArgumentException("Invalid timeout (" + timeout + ")");
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the named daemon threads used for background work of the {@link AccessSdk}, so they never keep the
+ * hosting JVM alive.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class AccessThreadFactory implements ThreadFactory {
+
+	private final String prefix;
+
+	private final AtomicInteger counter = new AtomicInteger();
+
+	AccessThreadFactory(String name) {
+		this.prefix = "kount-access-" + name + "-";
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
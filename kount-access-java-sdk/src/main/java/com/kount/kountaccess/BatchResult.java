@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.Collections;
+import java.util.Map;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Outcome of a batch lookup ({@link AccessSdk#getDevicesBatch(java.util.Collection)} or
+ * {@link AccessSdk#getUniquesBatch(java.util.Collection)}): the responses of the keys that succeeded and the errors of
+ * the keys that failed.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class BatchResult {
+
+	private final Map<String, JSONObject> results;
+
+	private final Map<String, AccessException> errors;
+
+	private final long elapsedMillis;
+
+	BatchResult(Map<String, JSONObject> results, Map<String, AccessException> errors, long elapsedMillis) {
+		this.results = Collections.unmodifiableMap(results);
+		this.errors = Collections.unmodifiableMap(errors);
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return the response for every key that succeeded, in the order the keys were given.
+	 */
+	public Map<String, JSONObject> getResults() {
+		return results;
+	}
+
+	/**
+	 * @return the error for every key that failed, in the order the keys were given.
+	 */
+	public Map<String, AccessException> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return the wall-clock time of the whole batch in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "results = " + results.size() + ", errors = " + errors.size() + ", elapsed = " + elapsedMillis + "ms";
+	}
+}
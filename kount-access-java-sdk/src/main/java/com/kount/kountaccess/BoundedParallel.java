@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Runs a number of independent calls on an executor with at most a given number of them in flight. A failing call
+ * doesn't stop the others; its error is collected instead.
+ * <p>
+ * The calling thread takes part: it runs calls itself alongside up to maxConcurrency - 1 helper tasks on the
+ * executor, all of them taking the next call from a shared counter. The calls therefore complete even if no helper
+ * ever starts, e.g. when the calling thread is itself a task of a bounded executor that is fully busy.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class BoundedParallel {
+
+	/**
+	 * Default number of calls in flight.
+	 */
+	static final int DEFAULT_CONCURRENCY = 8;
+
+	/**
+	 * One of the calls.
+	 */
+	interface Call {
+		void run(int index) throws AccessException;
+	}
+
+	private BoundedParallel() {
+	}
+
+	/**
+	 * Runs the calls and waits for all of them.
+	 *
+	 * @return the error of each call, or null for the calls that succeeded.
+	 */
+	static AccessException[] run(Executor executor, final int count, int maxConcurrency, final Call call)
+			throws InterruptedException {
+		final AccessException[] errors = new AccessException[count];
+		final AtomicInteger next = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(count);
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int index;
+				while ((index = next.getAndIncrement()) < count) {
+					try {
+						call.run(index);
+					} catch (AccessException e) {
+						errors[index] = e;
+					} catch (RuntimeException e) {
+						errors[index] = new AccessException(AccessErrorType.INTERNAL_ERROR, e.toString(), e);
+					} finally {
+						done.countDown();
+					}
+				}
+			}
+		};
+		int helpers = Math.min(maxConcurrency, count) - 1;
+		for (int i = 0; i < helpers; i++) {
+			try {
+				executor.execute(worker);
+			} catch (RuntimeException e) {
+				// rejected by the executor: fewer helpers
+				break;
+			}
+		}
+		worker.run();
+		done.await();
+		return errors;
+	}
+}
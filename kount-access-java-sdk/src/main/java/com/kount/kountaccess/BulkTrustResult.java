@@ -0,0 +1,98 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of {@link AccessSdk#setDeviceTrustBulk(java.util.Collection)}: the error of every update that failed, and
+ * the throughput of the whole run.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class BulkTrustResult {
+
+	private final List<TrustUpdate> updates;
+
+	private final AccessException[] errors;
+
+	private final int errorCount;
+
+	private final long elapsedMillis;
+
+	BulkTrustResult(List<TrustUpdate> updates, AccessException[] errors, long elapsedMillis) {
+		this.updates = Collections.unmodifiableList(new ArrayList<>(updates));
+		this.errors = errors;
+		this.elapsedMillis = elapsedMillis;
+		int count = 0;
+		for (AccessException error : errors) {
+			if (error != null) {
+				count++;
+			}
+		}
+		this.errorCount = count;
+	}
+
+	/**
+	 * @return the updates, in the order they were given.
+	 */
+	public List<TrustUpdate> getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * @param index
+	 *            index of the update in {@link #getUpdates()}
+	 * @return the error of the update, or null if it succeeded.
+	 */
+	public AccessException getError(int index) {
+		return errors[index];
+	}
+
+	/**
+	 * @return the failed updates with their errors, in the order they were given.
+	 */
+	public Map<TrustUpdate, AccessException> getFailures() {
+		Map<TrustUpdate, AccessException> failures = new LinkedHashMap<>();
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] != null) {
+				failures.put(updates.get(i), errors[i]);
+			}
+		}
+		return failures;
+	}
+
+	public int getSuccessCount() {
+		return updates.size() - errorCount;
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * @return the wall-clock time of the whole run in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the number of updates processed per second.
+	 */
+	public double getThroughput() {
+		return (elapsedMillis > 0) ? (updates.size() * 1000.0) / elapsedMillis : updates.size() * 1000.0;
+	}
+
+	@Override
+	public String toString() {
+		return "updates = " + updates.size() + ", errors = " + errorCount + ", elapsed = " + elapsedMillis
+				+ "ms, throughput = " + String.format("%.1f", getThroughput()) + "/s";
+	}
+}
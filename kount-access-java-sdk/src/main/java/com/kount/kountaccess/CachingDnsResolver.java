@@ -0,0 +1,239 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Caches the addresses of the Access hosts for the new pooled connections, so a connection doesn't wait for a DNS
+ * lookup, whatever the caching settings of the JVM.
+ * <p>
+ * Once a host is looked up, its addresses are looked up again in the background before they expire, at three
+ * quarters of their time to live, until the resolver is closed. While these lookups fail, they are retried every
+ * eighth of the time to live, and the last addresses found are still used for up to the maximum stale time after
+ * they expired, so a DNS hiccup doesn't fail the calls. Only the first lookup of a host, or one after the maximum
+ * stale time, runs on the calling thread. The refresh of a host stops once it hasn't been resolved for
+ * {@value #IDLE_TTLS} times the time to live, e.g. when its connections are all kept alive or the SDK is no longer
+ * used without having been closed; its next resolve looks it up again if needed.
+ * <p>
+ * The lookups in the background of all the resolvers run on a single daemon thread, ending when there's nothing to
+ * refresh, so an SDK that is never closed doesn't leave a thread behind.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class CachingDnsResolver implements DnsResolver {
+	private static final Logger logger = LogManager.getLogger(CachingDnsResolver.class);
+
+	/**
+	 * Times to live without a resolve of a host after which its refresh stops
+	 */
+	static final int IDLE_TTLS = 2;
+
+	/**
+	 * How long the refresher thread is kept without anything to refresh
+	 */
+	private static final long REFRESHER_KEEP_ALIVE_SECONDS = 10;
+
+	private static final ScheduledThreadPoolExecutor refresher = new ScheduledThreadPoolExecutor(1,
+			new AccessThreadFactory("dns"));
+
+	static {
+		refresher.setKeepAliveTime(REFRESHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+		refresher.allowCoreThreadTimeOut(true);
+		refresher.setRemoveOnCancelPolicy(true);
+	}
+
+	private final DnsResolver resolver;
+
+	private final long ttlNanos;
+
+	private final long maxStaleNanos;
+
+	private final ConcurrentMap<String, Record> records = new ConcurrentHashMap<>();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param resolver
+	 *            The resolver doing the lookups.
+	 * @param ttlMillis
+	 *            Time to live of the addresses found.
+	 * @param maxStaleMillis
+	 *            How long the expired addresses of a host are still used while its lookups fail.
+	 */
+	CachingDnsResolver(DnsResolver resolver, long ttlMillis, long maxStaleMillis) {
+		this.resolver = resolver;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(maxStaleMillis);
+	}
+
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		Record record = records.get(host);
+		if (record == null) {
+			Record created = new Record(host);
+			record = records.putIfAbsent(host, created);
+			if (record == null) {
+				record = created;
+			}
+		}
+		record.lastResolved = System.nanoTime();
+		Addresses addresses = record.addresses;
+		if (addresses != null) {
+			long age = System.nanoTime() - addresses.resolvedAt;
+			if ((age < ttlNanos) || (record.failing && (age < ttlNanos + maxStaleNanos))) {
+				// fresh, or stale while the refresh in the background keeps failing
+				return addresses.get();
+			}
+		}
+		try {
+			return record.lookup().get();
+		} catch (UnknownHostException e) {
+			addresses = record.addresses;
+			if (addresses != null) {
+				// retried in the background, the next resolves using the last addresses found meanwhile
+				record.failing = true;
+				record.schedule(ttlNanos / 8);
+			}
+			if ((addresses != null) && (System.nanoTime() - addresses.resolvedAt < ttlNanos + maxStaleNanos)) {
+				logger.warn("DNS lookup of {} failed, using the addresses found {}s ago: {}", host,
+						TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - addresses.resolvedAt), e.toString());
+				return addresses.get();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Stops the lookups in the background.
+	 */
+	void close() {
+		closed = true;
+		for (Record record : records.values()) {
+			record.cancel();
+		}
+	}
+
+	/**
+	 * @return the number of hosts cached.
+	 */
+	int size() {
+		return records.size();
+	}
+
+	/**
+	 * Addresses of a host and the time they were found.
+	 */
+	private static class Addresses {
+		private final InetAddress[] addresses;
+
+		final long resolvedAt = System.nanoTime();
+
+		Addresses(InetAddress[] addresses) {
+			this.addresses = addresses;
+		}
+
+		/**
+		 * @return a copy, the callers may reorder it.
+		 */
+		InetAddress[] get() {
+			return addresses.clone();
+		}
+	}
+
+	/**
+	 * The cache entry of a host, and the refresh of its addresses in the background.
+	 */
+	private class Record implements Runnable {
+		private final String host;
+
+		volatile Addresses addresses;
+
+		/**
+		 * Whether the last lookup in the background failed
+		 */
+		volatile boolean failing;
+
+		/**
+		 * Last time the host was resolved, from {@link System#nanoTime()}
+		 */
+		volatile long lastResolved = System.nanoTime();
+
+		/**
+		 * The refresh scheduled, or null; guarded by this
+		 */
+		private ScheduledFuture<?> scheduled;
+
+		Record(String host) {
+			this.host = host;
+		}
+
+		/**
+		 * Looks the host up, and schedules the refresh of the addresses found.
+		 */
+		Addresses lookup() throws UnknownHostException {
+			Addresses found = new Addresses(resolver.resolve(host));
+			addresses = found;
+			failing = false;
+			schedule(ttlNanos - (ttlNanos / 4));
+			return found;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				scheduled = null;
+			}
+			if (closed || (System.nanoTime() - lastResolved > IDLE_TTLS * ttlNanos)) {
+				// not used for a while: the next resolve looks the host up on the calling thread once expired
+				failing = false;
+				return;
+			}
+			try {
+				lookup();
+			} catch (UnknownHostException | RuntimeException e) {
+				long age = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - addresses.resolvedAt);
+				if (failing) {
+					logger.debug("DNS refresh of {} failed again, addresses found {}s ago: {}", host, age,
+							e.toString());
+				} else {
+					logger.warn("DNS refresh of {} failed, using the addresses found {}s ago: {}", host, age,
+							e.toString());
+				}
+				failing = true;
+				schedule(ttlNanos / 8);
+			}
+		}
+
+		synchronized void schedule(long delayNanos) {
+			if ((scheduled != null) || closed) {
+				return;
+			}
+			try {
+				scheduled = refresher.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException e) {
+				// the JVM is shutting down
+			}
+		}
+
+		synchronized void cancel() {
+			if (scheduled != null) {
+				scheduled.cancel(false);
+				scheduled = null;
+			}
+		}
+	}
+}
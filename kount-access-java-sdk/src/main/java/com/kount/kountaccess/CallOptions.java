@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable options of the calls made through an SDK view, see {@link AccessSdk#withOptions(CallOptions)}: the
+ * priority class and the fairness tag of the calls in the dispatch queue of the SDK (enabled with
+ * {@link AccessSdkBuilder#fairQueueing(int)}), and the deadline of the calls.
+ *
+ * <pre>
+ * AccessSdk export = sdk.withOptions(CallOptions.DEFAULT.withPriority(Priority.BATCH).withTag("export"));
+ * JSONObject decision = sdk.withOptions(CallOptions.DEFAULT.withTimeout(800, TimeUnit.MILLISECONDS))
+ * 		.getDecision(session, username, password);
+ * </pre>
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public final class CallOptions {
+
+	/**
+	 * Priority class of a call in the dispatch queue.
+	 */
+	public enum Priority {
+		/**
+		 * Latency critical calls, e.g. a login decision: dispatched before any batch call waiting.
+		 */
+		INTERACTIVE,
+		/**
+		 * Background calls, e.g. bulk updates or exports: dispatched when no interactive call is waiting.
+		 */
+		BATCH
+	}
+
+	/**
+	 * Interactive calls with the default tag of the SDK (its merchant ID).
+	 */
+	public static final CallOptions DEFAULT = new CallOptions(Priority.INTERACTIVE, null, 0);
+
+	private final Priority priority;
+
+	private final String tag;
+
+	private final long deadlineMillis;
+
+	private CallOptions(Priority priority, String tag, long deadlineMillis) {
+		this.priority = priority;
+		this.tag = tag;
+		this.deadlineMillis = deadlineMillis;
+	}
+
+	/**
+	 * @param priority
+	 *            The priority class of the calls.
+	 * @return options with the priority class, and the other values of these options.
+	 */
+	public CallOptions withPriority(Priority priority) {
+		return new CallOptions((priority != null) ? priority : Priority.INTERACTIVE, tag, deadlineMillis);
+	}
+
+	/**
+	 * @param tag
+	 *            The fairness tag of the calls, e.g. a tenant or feature name weighted with
+	 *            {@link AccessSdkBuilder#tagWeight(String, int)}; null for the merchant ID.
+	 * @return options with the tag, and the other values of these options.
+	 */
+	public CallOptions withTag(String tag) {
+		return new CallOptions(priority, tag, deadlineMillis);
+	}
+
+	/**
+	 * Sets the absolute deadline of the calls, e.g. the one of the login request they are part of. A call is failed
+	 * with {@link com.kount.kountaccess.AccessException.AccessErrorType#DEADLINE_EXCEEDED} without being sent once
+	 * the deadline has passed, e.g. while it waits in the dispatch queue or for a pooled connection, and the time left
+	 * caps the connect and socket timeouts of its request.
+	 *
+	 * @param deadlineMillis
+	 *            The deadline, in milliseconds since the epoch ({@link System#currentTimeMillis()}); 0 for none.
+	 * @return options with the deadline, and the other values of these options.
+	 */
+	public CallOptions withDeadline(long deadlineMillis) {
+		return new CallOptions(priority, tag, Math.max(0, deadlineMillis));
+	}
+
+	/**
+	 * @param timeout
+	 *            The time left from now for the calls, see {@link #withDeadline(long)}.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return options with the deadline, and the other values of these options.
+	 */
+	public CallOptions withTimeout(long timeout, TimeUnit unit) {
+		return withDeadline(System.currentTimeMillis() + unit.toMillis(timeout));
+	}
+
+	public Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return the fairness tag, or null for the merchant ID.
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return the deadline of the calls in milliseconds since the epoch, or 0 if none.
+	 */
+	public long getDeadlineMillis() {
+		return deadlineMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "priority = " + priority + ", tag = " + tag + ", deadline = " + deadlineMillis;
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Keeps a minimum number of pooled connections to the Access host open through the idle periods, so the first calls
+ * after a quiet night don't pay the TCP connect and TLS handshake.
+ * <p>
+ * On every pass the connections idle for longer than the maximum idle time are closed, before the server or a NAT
+ * middlebox drops them silently, and while no call is in flight the pool is topped up to the minimum with fresh
+ * connections resuming the cached TLS session. No request is sent to the server.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class ConnectionKeepAlive implements Runnable {
+	private static final Logger logger = LogManager.getLogger(ConnectionKeepAlive.class);
+
+	/**
+	 * Runs the reconnects on the keep-alive thread, one after the other
+	 */
+	private static final Executor SAME_THREAD = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final PoolingHttpClientConnectionManager manager;
+
+	private final HttpRoute route;
+
+	private final int minConnections;
+
+	private final long maxIdleMillis;
+
+	private final int timeoutMillis;
+
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(new AccessThreadFactory("keepalive"));
+
+	/**
+	 * Starts the passes.
+	 *
+	 * @param intervalMillis
+	 *            Delay between two passes.
+	 * @param maxIdleMillis
+	 *            Idle time after which a connection is replaced, 0 to keep the connections until they break.
+	 * @param timeoutMillis
+	 *            Timeout to lease and to open each connection.
+	 */
+	ConnectionKeepAlive(PoolingHttpClientConnectionManager manager, HttpRoute route, int minConnections,
+			long intervalMillis, long maxIdleMillis, int timeoutMillis) {
+		this.manager = manager;
+		this.route = route;
+		this.minConnections = minConnections;
+		this.maxIdleMillis = maxIdleMillis;
+		this.timeoutMillis = timeoutMillis;
+		scheduler.scheduleWithFixedDelay(this, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void run() {
+		try {
+			manager.closeExpiredConnections();
+			if (maxIdleMillis > 0) {
+				manager.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+			}
+			PoolStats stats = manager.getStats(route);
+			int target = Math.min(minConnections, manager.getMaxPerRoute(route));
+			// connections in use are warm already, and the calls must not wait for the ones leased here
+			if ((stats.getLeased() == 0) && (stats.getPending() == 0) && (stats.getAvailable() < target)) {
+				ConnectionWarmUp.open(manager, route, target, timeoutMillis, SAME_THREAD);
+			}
+		} catch (AccessException | RuntimeException e) {
+			// a failing pass must not cancel the next ones
+			logger.debug("keep-alive of the connections to {} failed: {}", route.getTargetHost(), e.toString());
+		}
+	}
+
+	/**
+	 * Stops the passes, interrupting the one in progress.
+	 */
+	void close() {
+		scheduler.shutdownNow();
+	}
+}
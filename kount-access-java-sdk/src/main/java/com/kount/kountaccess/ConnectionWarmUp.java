@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Opens pooled connections to the Access host ahead of the first calls: DNS lookup, TCP connect and TLS handshake,
+ * without sending any request. The connections go back to the pool, so the first calls only lease them.
+ * <p>
+ * The first connection is opened alone, so its full TLS handshake puts the session in the client session cache of
+ * the SSL context (enabled by default in JSSE), and the others open in parallel and resume that session with an
+ * abbreviated handshake.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class ConnectionWarmUp {
+	private static final Logger logger = LogManager.getLogger(ConnectionWarmUp.class);
+
+	/**
+	 * Timeout of each connection when the SDK has none configured
+	 */
+	static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+
+	private ConnectionWarmUp() {
+	}
+
+	/**
+	 * @return the route of the calls to the endpoint URL, the key of its connections in the pool.
+	 */
+	static HttpRoute route(String endpointUrl) {
+		URI uri = URI.create(endpointUrl);
+		int port = uri.getPort();
+		if (port < 0) {
+			port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+		}
+		return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null,
+				"https".equalsIgnoreCase(uri.getScheme()));
+	}
+
+	/**
+	 * Opens the connections and releases them to the pool.
+	 *
+	 * @param timeoutMillis
+	 *            timeout to lease and to open each connection
+	 * @return the number of connections opened.
+	 * @throws AccessException
+	 *             Thrown if none of the connections could be opened ({@link AccessErrorType#NETWORK_ERROR}).
+	 */
+	static int open(final PoolingHttpClientConnectionManager manager, final HttpRoute route, int connections,
+			final int timeoutMillis, Executor executor) throws AccessException {
+		if (connections <= 0) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		final HttpClientConnection[] leased = new HttpClientConnection[connections];
+		AccessException[] errors = new AccessException[connections];
+		try {
+			// all of them leased before any is released, or the pool would hand out the same connection again
+			for (int i = 0; i < connections; i++) {
+				leased[i] = manager.requestConnection(route, null).get(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			errors[0] = connect(manager, leased[0], route, timeoutMillis);
+			if (connections > 1) {
+				AccessException[] others = BoundedParallel.run(executor, connections - 1, connections - 1,
+						new BoundedParallel.Call() {
+							@Override
+							public void run(int index) throws AccessException {
+								AccessException error = connect(manager, leased[index + 1], route, timeoutMillis);
+								if (error != null) {
+									throw error;
+								}
+							}
+						});
+				System.arraycopy(others, 0, errors, 1, others.length);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Interrupted while opening connections", e);
+		} catch (ExecutionException | ConnectionPoolTimeoutException e) {
+			throw new AccessException(AccessErrorType.NETWORK_ERROR, "Unable to lease a pooled connection", e);
+		} finally {
+			for (HttpClientConnection connection : leased) {
+				if (connection != null) {
+					// kept alive until the server closes it or the pool evicts it
+					manager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+
+		int opened = 0;
+		AccessException firstError = null;
+		for (AccessException error : errors) {
+			if (error == null) {
+				opened++;
+			} else if (firstError == null) {
+				firstError = error;
+			}
+		}
+		logger.debug("opened {} of {} connections to {} in {}ms", opened, connections, route.getTargetHost(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		if (opened == 0) {
+			throw firstError;
+		}
+		if (firstError != null) {
+			logger.warn("unable to open {} connections to {}", connections - opened, route.getTargetHost(),
+					firstError);
+		}
+		return opened;
+	}
+
+	private static AccessException connect(PoolingHttpClientConnectionManager manager, HttpClientConnection connection,
+			HttpRoute route, int timeoutMillis) {
+		try {
+			if (!connection.isOpen()) {
+				HttpClientContext context = HttpClientContext.create();
+				manager.connect(connection, route, timeoutMillis, context);
+				manager.routeComplete(connection, route, context);
+			}
+			return null;
+		} catch (IOException e) {
+			try {
+				connection.close();
+			} catch (IOException ignored) {
+				// already failed
+			}
+			return new AccessException(AccessErrorType.NETWORK_ERROR,
+					"Unable to open a connection to " + route.getTargetHost() + ": " + e, e);
+		}
+	}
+}
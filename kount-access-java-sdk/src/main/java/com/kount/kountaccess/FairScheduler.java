@@ -0,0 +1,454 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+import com.kount.kountaccess.CallOptions.Priority;
+
+/**
+ * Dispatch queue of the requests to the Access server, bounding the requests in flight. While there is room, a
+ * request goes right through with a compare-and-set on the free slots; the lock and the queues are only used when
+ * the requests in flight are at the limit.
+ * <p>
+ * Waiting requests are dispatched by priority class, every interactive request before any batch request, and within
+ * a class by weighted fair queueing between their tags (start-time fair queueing): a tag with weight 3 gets three
+ * times as many slots as a tag with weight 1 while both have requests waiting, whatever the number of threads behind
+ * each of them.
+ * <p>
+ * With a {@link GradientLimit}, the bound follows the round trip times of the requests, and a request is rejected
+ * right away instead of queued once as many requests are waiting as the bound allows in flight.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class FairScheduler {
+
+	/**
+	 * Weight of the tags without a configured weight
+	 */
+	static final int DEFAULT_WEIGHT = 1;
+
+	/**
+	 * Current bound of the requests in flight, changed under the lock
+	 */
+	private volatile int maxInFlight;
+
+	private final Map<String, Integer> weights;
+
+	/**
+	 * Adaptive bound, or null for a fixed one
+	 */
+	private final GradientLimit limiter;
+
+	/**
+	 * Free slots
+	 */
+	private final AtomicInteger available;
+
+	/**
+	 * Requests queued or about to be, checked by the releases before taking the lock
+	 */
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * One queue per priority class, guarded by the lock
+	 */
+	private final ClassQueue[] queues;
+
+	/**
+	 * Guarded by the lock
+	 */
+	private boolean closed;
+
+	/**
+	 * Guarded by the lock
+	 */
+	private long sequence;
+
+	FairScheduler(int maxInFlight, Map<String, Integer> weights) {
+		this(maxInFlight, weights, null);
+	}
+
+	/**
+	 * @param limiter
+	 *            Adaptive bound of the requests in flight, starting from its limit; null for maxInFlight.
+	 */
+	FairScheduler(int maxInFlight, Map<String, Integer> weights, GradientLimit limiter) {
+		this.maxInFlight = (limiter != null) ? limiter.getLimit() : maxInFlight;
+		this.weights = (weights != null) ? weights : Collections.<String, Integer> emptyMap();
+		this.limiter = limiter;
+		this.available = new AtomicInteger(this.maxInFlight);
+		this.queues = new ClassQueue[Priority.values().length];
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new ClassQueue(i);
+		}
+	}
+
+	/**
+	 * Waits for a slot.
+	 *
+	 * @param timeoutMillis
+	 *            The maximum time to wait, 0 or less to wait as long as needed.
+	 * @throws AccessException
+	 *             Thrown if no slot was free before the timeout ({@link AccessErrorType#NETWORK_ERROR}), the
+	 *             scheduler is closed or the request is shed ({@link AccessErrorType#REJECTED}), or the thread is
+	 *             interrupted.
+	 */
+	void acquire(Priority priority, String tag, long timeoutMillis) throws AccessException {
+		if ((waiting.get() == 0) && tryAcquire()) {
+			return;
+		}
+		Waiter waiter;
+		lock.lock();
+		try {
+			if (closed) {
+				throw new AccessException(AccessErrorType.REJECTED, "Access SDK is closed");
+			}
+			if ((limiter != null) && (waiting.get() >= maxInFlight)) {
+				throw new AccessException(AccessErrorType.REJECTED,
+						"Too many requests waiting (" + waiting.get() + "), limit " + maxInFlight);
+			}
+			// published before the last check of the slots, so a concurrent release sees it and dispatches
+			waiting.incrementAndGet();
+			if (tryAcquire()) {
+				waiting.decrementAndGet();
+				return;
+			}
+			waiter = queues[priority.ordinal()].enqueue(tag, weight(tag), sequence++);
+		} finally {
+			lock.unlock();
+		}
+		await(waiter, timeoutMillis);
+	}
+
+	/**
+	 * Frees the slot of a request, handing it to the next request waiting if any.
+	 */
+	void release() {
+		release(0, false);
+	}
+
+	/**
+	 * Frees the slot of a completed request, updating the adaptive bound with it, and hands it to the next request
+	 * waiting if any.
+	 *
+	 * @param rttNanos
+	 *            The round trip time of the request, 0 if unknown.
+	 * @param dropped
+	 *            Whether the request failed in a way showing an overload.
+	 */
+	void release(long rttNanos, boolean dropped) {
+		if (limiter != null) {
+			int newLimit = limiter.onSample(rttNanos, getInFlight(), dropped);
+			if (newLimit != maxInFlight) {
+				lock.lock();
+				try {
+					setMaxInFlight(limiter.getLimit());
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+		available.incrementAndGet();
+		if (waiting.get() > 0) {
+			lock.lock();
+			try {
+				dispatch();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Rejects the requests waiting and the next ones.
+	 */
+	void close() {
+		lock.lock();
+		try {
+			closed = true;
+			for (ClassQueue queue : queues) {
+				Waiter waiter;
+				while ((waiter = queue.poll()) != null) {
+					waiting.decrementAndGet();
+					waiter.wake(Waiter.REJECTED);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the current bound of the requests in flight.
+	 */
+	int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @return the adaptive bound, or null if the bound is fixed.
+	 */
+	GradientLimit getLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * Changes the fixed bound at runtime, the requests waiting taking the new slots of a higher bound right away.
+	 *
+	 * @throws IllegalStateException
+	 *             Thrown if the bound is adaptive.
+	 */
+	void setLimit(int newMaxInFlight) {
+		if (limiter != null) {
+			throw new IllegalStateException("The bound is adaptive, change its minimum and maximum instead");
+		}
+		resize(newMaxInFlight);
+	}
+
+	/**
+	 * Changes the range of the adaptive bound at runtime, the current bound moved into it if outside.
+	 *
+	 * @throws IllegalStateException
+	 *             Thrown if the bound is fixed.
+	 */
+	void setLimitRange(int minLimit, int maxLimit) {
+		if (limiter == null) {
+			throw new IllegalStateException("The bound is fixed");
+		}
+		limiter.setRange(minLimit, maxLimit);
+		resize(limiter.getLimit());
+	}
+
+	private void resize(int newMaxInFlight) {
+		lock.lock();
+		try {
+			setMaxInFlight(newMaxInFlight);
+			dispatch();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Changes the bound, the requests in flight beyond a lower bound completing normally. Called with the lock held.
+	 */
+	private void setMaxInFlight(int newMaxInFlight) {
+		int delta = newMaxInFlight - maxInFlight;
+		if (delta != 0) {
+			maxInFlight = newMaxInFlight;
+			available.addAndGet(delta);
+		}
+	}
+
+	/**
+	 * @return the number of requests in flight.
+	 */
+	int getInFlight() {
+		return maxInFlight - available.get();
+	}
+
+	/**
+	 * @return the number of requests waiting for a slot.
+	 */
+	int getWaiting() {
+		return waiting.get();
+	}
+
+	private boolean tryAcquire() {
+		for (;;) {
+			int free = available.get();
+			if (free <= 0) {
+				return false;
+			}
+			if (available.compareAndSet(free, free - 1)) {
+				return true;
+			}
+		}
+	}
+
+	private int weight(String tag) {
+		Integer weight = weights.get(tag);
+		return (weight != null) ? weight : DEFAULT_WEIGHT;
+	}
+
+	/**
+	 * Hands the free slots to the waiting requests, in order. Called with the lock held.
+	 */
+	private void dispatch() {
+		for (ClassQueue queue : queues) {
+			while (!queue.isEmpty()) {
+				if (!tryAcquire()) {
+					return;
+				}
+				waiting.decrementAndGet();
+				queue.poll().wake(Waiter.GRANTED);
+			}
+		}
+	}
+
+	private void await(Waiter waiter, long timeoutMillis) throws AccessException {
+		long deadline = (timeoutMillis > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+		boolean interrupted = false;
+		while (waiter.state == Waiter.WAITING) {
+			if (timeoutMillis > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					break;
+				}
+				LockSupport.parkNanos(this, remaining);
+			} else {
+				LockSupport.park(this);
+			}
+			if (Thread.interrupted()) {
+				interrupted = true;
+				break;
+			}
+		}
+		if (waiter.state == Waiter.WAITING) {
+			lock.lock();
+			try {
+				if ((waiter.state == Waiter.WAITING) && queues[waiter.priority].remove(waiter)) {
+					waiting.decrementAndGet();
+					waiter.state = Waiter.CANCELLED;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		switch (waiter.state) {
+		case Waiter.GRANTED:
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return;
+		case Waiter.REJECTED:
+			throw new AccessException(AccessErrorType.REJECTED, "Access SDK is closed");
+		default:
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+				throw new AccessException(AccessErrorType.INTERNAL_ERROR,
+						"Interrupted while waiting to be dispatched");
+			}
+			throw new AccessException(AccessErrorType.NETWORK_ERROR,
+					"Timed out after " + timeoutMillis + "ms waiting to be dispatched, " + maxInFlight
+							+ " requests in flight");
+		}
+	}
+
+	/**
+	 * A request waiting for a slot.
+	 */
+	private static class Waiter implements Comparable<Waiter> {
+		static final int WAITING = 0;
+
+		static final int GRANTED = 1;
+
+		static final int REJECTED = 2;
+
+		static final int CANCELLED = 3;
+
+		final Thread thread = Thread.currentThread();
+
+		final int priority;
+
+		/**
+		 * Virtual finish time of the request in its class queue
+		 */
+		final double finish;
+
+		final long sequence;
+
+		volatile int state = WAITING;
+
+		Waiter(int priority, double finish, long sequence) {
+			this.priority = priority;
+			this.finish = finish;
+			this.sequence = sequence;
+		}
+
+		void wake(int newState) {
+			state = newState;
+			LockSupport.unpark(thread);
+		}
+
+		@Override
+		public int compareTo(Waiter other) {
+			int result = Double.compare(finish, other.finish);
+			return (result != 0) ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/**
+	 * The requests waiting in one priority class, ordered by virtual finish time. Guarded by the lock of the
+	 * scheduler.
+	 */
+	private static class ClassQueue {
+		private final int priority;
+
+		private final Queue<Waiter> waiters = new PriorityQueue<>();
+
+		/**
+		 * Virtual finish time of the last request queued per tag
+		 */
+		private final Map<String, Double> lastFinish = new HashMap<>();
+
+		/**
+		 * Virtual finish time of the last request dispatched
+		 */
+		private double virtualTime;
+
+		ClassQueue(int priority) {
+			this.priority = priority;
+		}
+
+		Waiter enqueue(String tag, int weight, long sequence) {
+			Double last = lastFinish.get(tag);
+			double start = (last != null) ? Math.max(virtualTime, last) : virtualTime;
+			double finish = start + (1.0 / weight);
+			lastFinish.put(tag, finish);
+			Waiter waiter = new Waiter(priority, finish, sequence);
+			waiters.add(waiter);
+			return waiter;
+		}
+
+		Waiter poll() {
+			Waiter waiter = waiters.poll();
+			if (waiter != null) {
+				virtualTime = waiter.finish;
+			}
+			if (waiters.isEmpty()) {
+				// idle class: the virtual clock starts over, and the tags seen so far are forgotten
+				lastFinish.clear();
+				virtualTime = 0;
+			}
+			return waiter;
+		}
+
+		boolean remove(Waiter waiter) {
+			boolean removed = waiters.remove(waiter);
+			if (waiters.isEmpty()) {
+				lastFinish.clear();
+				virtualTime = 0;
+			}
+			return removed;
+		}
+
+		boolean isEmpty() {
+			return waiters.isEmpty();
+		}
+	}
+}
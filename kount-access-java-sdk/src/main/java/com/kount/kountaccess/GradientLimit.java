@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+/**
+ * Adaptive limit of the requests in flight, from the round trip times measured (a gradient algorithm, in the spirit
+ * of TCP Vegas). A long term average of the RTT is the baseline: while the recent RTT stays close to it the limit
+ * grows, by about the square root of the limit per sample; when the recent RTT goes up, requests are queueing
+ * somewhere between the SDK and the server, and the limit shrinks in proportion, down to half per sample. A dropped
+ * request (network error, timeout, 429 or 5xx) shrinks the limit by 10%.
+ * <p>
+ * The limit doesn't grow while fewer than half of it are in flight, since those samples say nothing about a higher
+ * concurrency.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class GradientLimit {
+
+	/**
+	 * Weight of a sample in the recent RTT
+	 */
+	static final double SHORT_SMOOTHING = 0.1;
+
+	/**
+	 * Weight of a sample in the baseline RTT, about the last 600 samples
+	 */
+	static final double LONG_SMOOTHING = 2.0 / 601;
+
+	/**
+	 * How much the recent RTT may exceed the baseline before the limit shrinks
+	 */
+	static final double TOLERANCE = 1.5;
+
+	/**
+	 * Weight of a new estimate in the limit
+	 */
+	static final double LIMIT_SMOOTHING = 0.2;
+
+	/**
+	 * Factor of the limit on a dropped request
+	 */
+	static final double BACKOFF = 0.9;
+
+	private int minLimit;
+
+	private int maxLimit;
+
+	private double limit;
+
+	private double shortRtt;
+
+	private double longRtt;
+
+	/**
+	 * @param initialLimit
+	 *            The limit until the first samples.
+	 */
+	GradientLimit(int minLimit, int maxLimit, int initialLimit) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Updates the limit with a completed request.
+	 *
+	 * @param rttNanos
+	 *            The round trip time of the request.
+	 * @param inFlight
+	 *            The number of requests in flight when it completed, itself included.
+	 * @param dropped
+	 *            Whether the request failed in a way showing an overload.
+	 * @return the new limit.
+	 */
+	synchronized int onSample(long rttNanos, int inFlight, boolean dropped) {
+		if (dropped) {
+			limit = Math.max(minLimit, limit * BACKOFF);
+			return getLimit();
+		}
+		if (rttNanos <= 0) {
+			return getLimit();
+		}
+		if (longRtt == 0) {
+			shortRtt = rttNanos;
+			longRtt = rttNanos;
+		} else {
+			shortRtt += (rttNanos - shortRtt) * SHORT_SMOOTHING;
+			longRtt += (rttNanos - longRtt) * LONG_SMOOTHING;
+		}
+		if (longRtt > 2 * shortRtt) {
+			// the server got faster (e.g. after a brownout): the baseline follows quicker
+			longRtt *= 0.95;
+		}
+		if (inFlight < limit / 2) {
+			return getLimit();
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, (TOLERANCE * longRtt) / shortRtt));
+		double estimate = (limit * gradient) + Math.sqrt(limit);
+		limit = Math.max(minLimit, Math.min(maxLimit, (limit * (1 - LIMIT_SMOOTHING)) + (estimate * LIMIT_SMOOTHING)));
+		return getLimit();
+	}
+
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	synchronized int getMinLimit() {
+		return minLimit;
+	}
+
+	synchronized int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Changes the range of the limit, the current limit moved into it if outside.
+	 */
+	synchronized void setRange(int minLimit, int maxLimit) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		limit = Math.max(minLimit, Math.min(maxLimit, limit));
+	}
+
+	/**
+	 * @return the recent RTT, in nanoseconds.
+	 */
+	synchronized long getShortRttNanos() {
+		return (long) shortRtt;
+	}
+
+	/**
+	 * @return the baseline RTT, in nanoseconds.
+	 */
+	synchronized long getLongRttNanos() {
+		return (long) longRtt;
+	}
+}
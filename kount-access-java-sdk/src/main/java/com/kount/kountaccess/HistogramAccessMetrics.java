@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Default {@link AccessMetrics} implementation. Keeps, per endpoint, a {@link LatencyHistogram} of the call durations
+ * in nanoseconds, the number of calls in flight, the number of responses per HTTP status class, the number of errors
+ * per {@link AccessErrorType}, the bytes sent and received, and a histogram per {@link AccessPhase} of the calls that
+ * went through the phase. All the counters are lock-free, and the ones updated by every call are striped so the
+ * calling threads don't contend on them.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class HistogramAccessMetrics implements AccessMetrics {
+
+	private static final AccessPhase[] PHASES = AccessPhase.values();
+
+	private final EndpointMetrics[] endpoints;
+
+	private final StripedCounter inFlight = new StripedCounter();
+
+	public HistogramAccessMetrics() {
+		endpoints = new EndpointMetrics[AccessEndpoint.values().length];
+		for (int i = 0; i < endpoints.length; i++) {
+			endpoints[i] = new EndpointMetrics();
+		}
+	}
+
+	@Override
+	public void callStarted(AccessEndpoint endpoint) {
+		inFlight.increment();
+		endpoints[endpoint.ordinal()].inFlight.increment();
+	}
+
+	@Override
+	public void callCompleted(AccessCall call) {
+		inFlight.decrement();
+		EndpointMetrics metrics = endpoints[call.getEndpoint().ordinal()];
+		metrics.inFlight.decrement();
+		metrics.latency.record(call.getDurationNanos());
+		for (int i = 0; i < metrics.phases.length; i++) {
+			long nanos = call.getPhaseNanos(PHASES[i]);
+			if (nanos > 0) {
+				metrics.phases[i].record(nanos);
+			}
+		}
+		metrics.statusClasses.incrementAndGet(Math.min(5, Math.max(0, call.getStatusCode() / 100)));
+		if (call.getErrorType() != null) {
+			metrics.errors.incrementAndGet(call.getErrorType().ordinal());
+		}
+		metrics.bytesSent.add(call.getBytesSent());
+		metrics.bytesReceived.add(call.getBytesReceived());
+	}
+
+	/**
+	 * @return the latency histogram of the endpoint, in nanoseconds.
+	 */
+	public LatencyHistogram getLatency(AccessEndpoint endpoint) {
+		return endpoints[endpoint.ordinal()].latency;
+	}
+
+	/**
+	 * @return the histogram of the time spent in the phase by the calls to the endpoint, in nanoseconds. Calls that
+	 *         skipped the phase (e.g. no connect on a kept-alive connection) are not recorded.
+	 */
+	public LatencyHistogram getPhaseLatency(AccessEndpoint endpoint, AccessPhase phase) {
+		return endpoints[endpoint.ordinal()].phases[phase.ordinal()];
+	}
+
+	/**
+	 * @return the number of calls in flight to all the endpoints.
+	 */
+	public int getInFlight() {
+		return (int) Math.max(0, inFlight.sum());
+	}
+
+	/**
+	 * @return the number of calls in flight to the endpoint.
+	 */
+	public int getInFlight(AccessEndpoint endpoint) {
+		return (int) Math.max(0, endpoints[endpoint.ordinal()].inFlight.sum());
+	}
+
+	/**
+	 * @return the number of completed calls to the endpoint.
+	 */
+	public long getCallCount(AccessEndpoint endpoint) {
+		return endpoints[endpoint.ordinal()].latency.getCount();
+	}
+
+	/**
+	 * @param statusClass
+	 *            the class of the HTTP status (2 for 2xx, 4 for 4xx, etc.), or 0 for the calls without a response.
+	 * @return the number of calls to the endpoint with a response status of that class.
+	 */
+	public long getStatusCount(AccessEndpoint endpoint, int statusClass) {
+		if ((statusClass < 0) || (statusClass > 5)) {
+			return 0;
+		}
+		return endpoints[endpoint.ordinal()].statusClasses.get(statusClass);
+	}
+
+	/**
+	 * @return the number of failed calls to the endpoint.
+	 */
+	public long getErrorCount(AccessEndpoint endpoint) {
+		long total = 0;
+		for (AccessErrorType type : AccessErrorType.values()) {
+			total += getErrorCount(endpoint, type);
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of calls to the endpoint that failed with that type of error.
+	 */
+	public long getErrorCount(AccessEndpoint endpoint, AccessErrorType errorType) {
+		return endpoints[endpoint.ordinal()].errors.get(errorType.ordinal());
+	}
+
+	public long getBytesSent(AccessEndpoint endpoint) {
+		return endpoints[endpoint.ordinal()].bytesSent.sum();
+	}
+
+	public long getBytesReceived(AccessEndpoint endpoint) {
+		return endpoints[endpoint.ordinal()].bytesReceived.sum();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("in flight = ").append(getInFlight());
+		for (AccessEndpoint endpoint : AccessEndpoint.values()) {
+			if (getCallCount(endpoint) > 0) {
+				result.append(", ").append(endpoint.getName()).append(": {").append(getLatency(endpoint))
+						.append(", errors = ").append(getErrorCount(endpoint)).append('}');
+			}
+		}
+		return result.toString();
+	}
+
+	private static class EndpointMetrics {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+		final StripedCounter inFlight = new StripedCounter();
+		final AtomicLongArray statusClasses = new AtomicLongArray(6);
+		final AtomicLongArray errors = new AtomicLongArray(AccessErrorType.values().length);
+		final StripedCounter bytesSent = new StripedCounter();
+		final StripedCounter bytesReceived = new StripedCounter();
+
+		EndpointMetrics() {
+			for (int i = 0; i < phases.length; i++) {
+				phases[i] = new LatencyHistogram();
+			}
+		}
+	}
+}
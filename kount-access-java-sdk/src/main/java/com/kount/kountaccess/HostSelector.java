@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the Access host of each request among the configured ones (regional endpoints, or a primary and a backup):
+ * the one with the lowest expected latency, from an exponentially weighted moving average of its round trip times
+ * (peak sensitive: a slowdown shows right away, a recovery over about ten seconds) times the requests in flight to
+ * it. The average of a host decays while it isn't picked, so a host slower in the past is tried again after a while.
+ * <p>
+ * A host that refuses or drops the connections, or fails several requests in a row, is ejected for a backoff period
+ * (1s, doubling up to 30s) during which no request is routed to it; after the backoff it is picked again once its
+ * average, penalized by the failures and decaying meanwhile, is the lowest, and a success resets the backoff. If all
+ * the hosts are ejected, the one whose backoff ends first is picked, so the requests still go somewhere.
+ * <p>
+ * The selection reads a few volatile fields per host without locking; the updates of a host are synchronized on it.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class HostSelector {
+
+	/**
+	 * Time constant of the decay of the average round trip time
+	 */
+	static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+	/**
+	 * Round trip time recorded for a failed request, if it failed sooner
+	 */
+	static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Failed requests in a row ejecting a host
+	 */
+	static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+	static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+	private final List<Host> hosts;
+
+	/**
+	 * @param hostNames
+	 *            The host names (and ports), in order of preference when nothing is known about them yet.
+	 */
+	HostSelector(List<String> hostNames) {
+		List<Host> list = new ArrayList<>();
+		for (String hostName : hostNames) {
+			list.add(new Host(hostName));
+		}
+		this.hosts = Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @param exclude
+	 *            A host already tried for the request, or null.
+	 * @return the host to send a request to.
+	 */
+	Host select(Host exclude) {
+		long now = System.nanoTime();
+		Host best = null;
+		double bestCost = Double.MAX_VALUE;
+		Host firstBack = null;
+		for (Host host : hosts) {
+			if (host == exclude) {
+				continue;
+			}
+			if (host.isEjected(now)) {
+				if ((firstBack == null) || (host.ejectedUntil < firstBack.ejectedUntil)) {
+					firstBack = host;
+				}
+				continue;
+			}
+			double cost = host.cost(now);
+			if (cost < bestCost) {
+				best = host;
+				bestCost = cost;
+			}
+		}
+		if (best != null) {
+			return best;
+		}
+		return (firstBack != null) ? firstBack : exclude;
+	}
+
+	List<Host> getHosts() {
+		return hosts;
+	}
+
+	int size() {
+		return hosts.size();
+	}
+
+	@Override
+	public String toString() {
+		return hosts.toString();
+	}
+
+	/**
+	 * An Access host and its statistics.
+	 */
+	static class Host {
+		private final String name;
+
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		/**
+		 * Average round trip time in nanoseconds, 0 until the first sample
+		 */
+		private volatile double rttNanos;
+
+		private volatile long lastSample;
+
+		private volatile long ejectedUntil;
+
+		/**
+		 * Guarded by this
+		 */
+		private int consecutiveFailures;
+
+		/**
+		 * Ejections since the last success, guarded by this
+		 */
+		private int ejections;
+
+		Host(String name) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the URI with this host in place of the one of the URI.
+		 */
+		URI resolve(URI uri) {
+			try {
+				return new URI(uri.getScheme() + "://" + name + uri.getRawPath()
+						+ ((uri.getRawQuery() != null) ? "?" + uri.getRawQuery() : ""));
+			} catch (URISyntaxException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		/**
+		 * A request is sent to the host.
+		 */
+		void begin() {
+			inFlight.incrementAndGet();
+		}
+
+		/**
+		 * A request to the host got its response.
+		 *
+		 * @param rttNanos
+		 *            Time to the response headers.
+		 * @param failed
+		 *            Whether the response shows a failure of the host (5xx).
+		 */
+		void complete(long rttNanos, boolean failed) {
+			inFlight.decrementAndGet();
+			if (failed) {
+				recordFailure(Math.max(rttNanos, FAILURE_PENALTY_NANOS), false);
+			} else {
+				recordSuccess(rttNanos);
+			}
+		}
+
+		/**
+		 * A request to the host was given up before it was sent, saying nothing about the host.
+		 */
+		void cancel() {
+			inFlight.decrementAndGet();
+		}
+
+		/**
+		 * A request to the host failed without a response.
+		 *
+		 * @param connectFailure
+		 *            Whether no connection could be made, ejecting the host right away.
+		 */
+		void fail(long rttNanos, boolean connectFailure) {
+			inFlight.decrementAndGet();
+			recordFailure(Math.max(rttNanos, FAILURE_PENALTY_NANOS), connectFailure);
+		}
+
+		boolean isEjected(long now) {
+			return (ejectedUntil != 0) && (now - ejectedUntil < 0);
+		}
+
+		/**
+		 * @return the expected latency of a request sent now, the decayed average times the requests in flight.
+		 */
+		double cost(long now) {
+			double rtt = rttNanos;
+			if (rtt > 0) {
+				rtt *= Math.exp(-(double) Math.max(0, now - lastSample) / DECAY_NANOS);
+			}
+			// the hosts not measured yet, or long ago, in order
+			return (rtt + 1) * (inFlight.get() + 1);
+		}
+
+		int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * @return the average round trip time in nanoseconds, 0 if not measured yet.
+		 */
+		long getRttNanos() {
+			return (long) rttNanos;
+		}
+
+		private synchronized void recordSuccess(long sampleNanos) {
+			consecutiveFailures = 0;
+			ejections = 0;
+			ejectedUntil = 0;
+			sample(sampleNanos);
+		}
+
+		private synchronized void recordFailure(long sampleNanos, boolean connectFailure) {
+			sample(sampleNanos);
+			consecutiveFailures++;
+			if (connectFailure || (consecutiveFailures >= MAX_CONSECUTIVE_FAILURES)) {
+				long backoff = Math.min(MAX_BACKOFF_NANOS, MIN_BACKOFF_NANOS << Math.min(ejections, 5));
+				ejections++;
+				consecutiveFailures = 0;
+				ejectedUntil = System.nanoTime() + backoff;
+			}
+		}
+
+		/**
+		 * Peak EWMA: a slower sample replaces the average, a faster one is weighted by the time since the last one.
+		 */
+		private void sample(long sampleNanos) {
+			long now = System.nanoTime();
+			double rtt = rttNanos;
+			if ((rtt == 0) || (sampleNanos > rtt)) {
+				rtt = sampleNanos;
+			} else {
+				double weight = Math.exp(-(double) Math.max(0, now - lastSample) / DECAY_NANOS);
+				rtt = (rtt * weight) + (sampleNanos * (1 - weight));
+			}
+			rttNanos = rtt;
+			lastSample = now;
+		}
+
+		@Override
+		public String toString() {
+			return name + " {rtt = " + TimeUnit.NANOSECONDS.toMillis(getRttNanos()) + "ms, inFlight = "
+					+ inFlight.get() + ", ejected = " + isEjected(System.nanoTime()) + "}";
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram. Every power of two is split in
+ * {@value #SUB_BUCKETS} linear buckets, so any recorded value is reported with a relative error below 1/32 (about 3%),
+ * over the whole range of positive {@code long} values, in a fixed amount of memory. Recording is two atomic
+ * increments and never blocks: the count is the sum of the buckets, the sum of the values is striped, and the maximum
+ * is only written when a higher value is recorded.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKET_GROUPS = 64 - SUB_BUCKET_BITS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_GROUPS * SUB_BUCKETS);
+
+	private final StripedCounter sum = new StripedCounter();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 *
+	 * @param value
+	 *            the value, e.g. a duration in nanoseconds
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		buckets.incrementAndGet(indexOf(value));
+		sum.add(value);
+		long current = max.get();
+		while ((value > current) && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @return the number of recorded values.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < buckets.length(); i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the mean of the recorded values, or 0 if there are none.
+	 */
+	public double getMean() {
+		long n = getCount();
+		return (n == 0) ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return the highest recorded value.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the value at a percentile, e.g. 99.9 for the p99.9 latency.
+	 *
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the highest value equivalent (within the histogram precision) to the value at the percentile, or 0 if
+	 *         there are no recorded values.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[buckets.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil((Math.min(100.0, Math.max(0.0, percentile)) / 100.0) * total));
+		long cumulative = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= target) {
+				return Math.min(highestEquivalentValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((shift + 1) * SUB_BUCKETS) + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	static long highestEquivalentValue(int index) {
+		int group = index / SUB_BUCKETS;
+		long subBucket = index % SUB_BUCKETS;
+		if (group == 0) {
+			return subBucket;
+		}
+		return ((SUB_BUCKETS + subBucket + 1) << (group - 1)) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "count = " + getCount() + ", mean = " + (long) getMean() + ", p50 = " + getValueAtPercentile(50)
+				+ ", p99 = " + getValueAtPercentile(99) + ", p99.9 = " + getValueAtPercentile(99.9) + ", max = "
+				+ getMax();
+	}
+}
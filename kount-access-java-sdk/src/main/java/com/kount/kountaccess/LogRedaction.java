@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.NameValuePair;
+
+/**
+ * Redaction and sampling of the request and response payloads written to the debug logs. The credential hashes
+ * ({@code uh}, {@code ph}, {@code ah}) and the API key are never logged, and only one response body out of
+ * {@code com.kount.kountaccess.payloadLogSampling} (system property, 100 by default, 1 to log them all) is logged.
+ * <p>
+ * Callers check that debug is enabled first, so nothing is formatted or allocated at higher levels.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class LogRedaction {
+
+	/**
+	 * Replaces the values of the redacted parameters.
+	 */
+	static final String REDACTED = "<redacted>";
+
+	/**
+	 * Default number of responses per logged response body.
+	 */
+	static final int DEFAULT_PAYLOAD_SAMPLING = 100;
+
+	private static final Set<String> REDACTED_PARAMETERS = new HashSet<>(Arrays.asList("uh", "ph", "ah", "apiKey"));
+
+	private static final int payloadSampling = Math.max(1,
+			Integer.getInteger("com.kount.kountaccess.payloadLogSampling", DEFAULT_PAYLOAD_SAMPLING));
+
+	private static final AtomicLong payloads = new AtomicLong();
+
+	private LogRedaction() {
+	}
+
+	/**
+	 * @return the request parameters, with the values of the credentials redacted.
+	 */
+	static String parameters(List<NameValuePair> parameters) {
+		StringBuilder result = new StringBuilder("[");
+		for (NameValuePair parameter : parameters) {
+			if (result.length() > 1) {
+				result.append(", ");
+			}
+			result.append(parameter.getName()).append('=')
+					.append(REDACTED_PARAMETERS.contains(parameter.getName()) ? REDACTED : parameter.getValue());
+		}
+		return result.append(']').toString();
+	}
+
+	/**
+	 * @return the URL, with the values of the credentials in the query redacted.
+	 */
+	static String url(String url) {
+		int query = url.indexOf('?');
+		if (query < 0) {
+			return url;
+		}
+		StringBuilder result = new StringBuilder(url.length()).append(url, 0, query + 1);
+		int start = query + 1;
+		while (start <= url.length()) {
+			int end = url.indexOf('&', start);
+			if (end < 0) {
+				end = url.length();
+			}
+			int equals = url.indexOf('=', start);
+			if ((equals > start) && (equals < end) && REDACTED_PARAMETERS.contains(url.substring(start, equals))) {
+				result.append(url, start, equals + 1).append(REDACTED);
+			} else {
+				result.append(url, start, end);
+			}
+			if (end < url.length()) {
+				result.append('&');
+			}
+			start = end + 1;
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return true if this response body is one of the sampled ones to log.
+	 */
+	static boolean samplePayload() {
+		return (payloads.getAndIncrement() % payloadSampling) == 0;
+	}
+}
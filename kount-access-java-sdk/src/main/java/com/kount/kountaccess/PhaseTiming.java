@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.ssl.SSLContexts;
+
+/**
+ * Hooks in the HTTP client timing the {@link AccessPhase}s of the call in progress on the current thread, counting
+ * its attempts and recording the pool lease flight recorder events. The client is blocking, so every hook runs on the
+ * thread making the call.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class PhaseTiming {
+
+	private PhaseTiming() {
+	}
+
+	/**
+	 * @param sslContext
+	 *            SSL context of the https connections, or null for the default one.
+	 * @param dnsResolver
+	 *            Resolver of the host names.
+	 * @return a connection pool timing the lease, DNS, connect and TLS phases.
+	 */
+	static PoolingHttpClientConnectionManager connectionManager(SSLContext sslContext, DnsResolver dnsResolver) {
+		Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory> create()
+				.register("http", new TimingPlainSocketFactory())
+				.register("https",
+						new TimingSslSocketFactory((sslContext != null) ? sslContext : SSLContexts.createDefault()))
+				.build();
+		return new TimingConnectionManager(registry, new TimingDnsResolver(dnsResolver));
+	}
+
+	/**
+	 * @return a request executor timing the server phase.
+	 */
+	static HttpRequestExecutor requestExecutor() {
+		return new TimingRequestExecutor();
+	}
+
+	private static class TimingConnectionManager extends PoolingHttpClientConnectionManager {
+
+		TimingConnectionManager(Registry<ConnectionSocketFactory> registry, DnsResolver dnsResolver) {
+			super(registry, dnsResolver);
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+			final ConnectionRequest request = super.requestConnection(route, state);
+			return new ConnectionRequest() {
+				@Override
+				public HttpClientConnection get(long timeout, TimeUnit unit)
+						throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+					Object event = AccessFlightRecorder.beginPoolLease();
+					long start = System.nanoTime();
+					boolean leased = false;
+					try {
+						HttpClientConnection connection = request.get(timeout, unit);
+						leased = true;
+						return connection;
+					} finally {
+						AccessCall.recordPhase(AccessPhase.POOL_LEASE, start);
+						AccessFlightRecorder.commitPoolLease(event, route.getTargetHost().toHostString(), leased);
+					}
+				}
+
+				@Override
+				public boolean cancel() {
+					return request.cancel();
+				}
+			};
+		}
+	}
+
+	private static class TimingDnsResolver implements DnsResolver {
+		private final DnsResolver resolver;
+
+		TimingDnsResolver(DnsResolver resolver) {
+			this.resolver = resolver;
+		}
+
+		@Override
+		public InetAddress[] resolve(String host) throws UnknownHostException {
+			long start = System.nanoTime();
+			try {
+				return resolver.resolve(host);
+			} finally {
+				AccessCall.recordPhase(AccessPhase.DNS, start);
+			}
+		}
+	}
+
+	private static class TimingPlainSocketFactory extends PlainConnectionSocketFactory {
+		@Override
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, HttpContext context) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+			} finally {
+				AccessCall.recordPhase(AccessPhase.CONNECT, start);
+			}
+		}
+	}
+
+	private static class TimingSslSocketFactory extends SSLConnectionSocketFactory {
+
+		TimingSslSocketFactory(SSLContext sslContext) {
+			super(sslContext, getDefaultHostnameVerifier());
+		}
+
+		@Override
+		public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, HttpContext context) throws IOException {
+			// the TCP connect is followed by the handshake in createLayeredSocket, which is timed on its own
+			AccessCall call = AccessCall.current();
+			long tlsBefore = (call != null) ? call.getPhaseNanos(AccessPhase.TLS) : 0;
+			long start = System.nanoTime();
+			try {
+				return super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+			} finally {
+				if (call != null) {
+					long tls = call.getPhaseNanos(AccessPhase.TLS) - tlsBefore;
+					call.addPhaseNanos(AccessPhase.CONNECT, (System.nanoTime() - start) - tls);
+				}
+			}
+		}
+
+		@Override
+		public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+				throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.createLayeredSocket(socket, target, port, context);
+			} finally {
+				AccessCall.recordPhase(AccessPhase.TLS, start);
+			}
+		}
+	}
+
+	private static class TimingRequestExecutor extends HttpRequestExecutor {
+		@Override
+		public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+				throws IOException, HttpException {
+			AccessCall call = AccessCall.current();
+			if (call != null) {
+				call.attempted();
+			}
+			long start = System.nanoTime();
+			try {
+				return super.execute(request, conn, context);
+			} finally {
+				AccessCall.recordPhase(AccessPhase.SERVER, start);
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived slots for info endpoint responses requested ahead of time with
+ * {@link AccessSdk#prefetch(String, String, InfoEndpointDataSet)}. A slot holds
+ * the pending (or completed) raw response for a session, so the next call can
+ * either complete immediately or join the request that is still in flight.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class PrefetchCache {
+
+	/**
+	 * Default time a prefetched response stays usable.
+	 */
+	static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+	/**
+	 * Default upper bound of parked sessions.
+	 */
+	static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+	private final long ttlNanos;
+
+	private final int maxEntries;
+
+	private final StripedCounter hits = new StripedCounter();
+
+	private final StripedCounter misses = new StripedCounter();
+
+	PrefetchCache(long ttlMillis, int maxEntries) {
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Parks a pending response for the session.
+	 *
+	 * @return false if the cache is full and the response was not parked.
+	 */
+	boolean put(String session, int infoFlag, String uniq, Future<String> response) {
+		if (slots.size() >= maxEntries) {
+			purgeExpired();
+			if (slots.size() >= maxEntries) {
+				return false;
+			}
+		}
+		slots.put(session, new Slot(response, infoFlag, uniq, System.nanoTime() + ttlNanos));
+		return true;
+	}
+
+	/**
+	 * Takes the parked response for the session out of the cache if it covers all the requested data sets, so it is
+	 * used once only. The lookup is counted by {@link #recordLookup(boolean)} once the response is used or not.
+	 *
+	 * @return the pending response, or null if nothing usable is parked.
+	 */
+	Future<String> take(String session, int infoFlag, String uniq) {
+		Slot slot = slots.get(session);
+		if (slot == null) {
+			return null;
+		}
+		if (slot.isExpired(System.nanoTime())) {
+			slots.remove(session, slot);
+			return null;
+		}
+		if ((slot.infoFlag & infoFlag) != infoFlag) {
+			return null;
+		}
+		// trusted data is per customer, so it has to be prefetched for the same uniq
+		if (((infoFlag & InfoEndpointDataSet.TRUSTED) != 0) && !uniq.equals(slot.uniq)) {
+			return null;
+		}
+		// another call for the session may have taken it meanwhile
+		return slots.remove(session, slot) ? slot.response : null;
+	}
+
+	/**
+	 * Counts a lookup, as a hit if a prefetched response was used.
+	 */
+	void recordLookup(boolean hit) {
+		if (hit) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+	}
+
+	/**
+	 * Drops the parked response for the session, e.g. after the prefetch failed.
+	 */
+	void evict(String session, Future<String> response) {
+		Slot slot = slots.get(session);
+		if ((slot != null) && (slot.response == response)) {
+			slots.remove(session, slot);
+		}
+	}
+
+	/**
+	 * Drops the parked response for the session, after its trusted state was updated.
+	 */
+	void evictSession(String session) {
+		slots.remove(session);
+	}
+
+	/**
+	 * Drops the parked trusted device information of the customer, after the trusted state of one of its devices was
+	 * updated: the sessions of the device aren't known.
+	 */
+	void evictTrusted(String uniq) {
+		for (Iterator<Map.Entry<String, Slot>> it = slots.entrySet().iterator(); it.hasNext();) {
+			Slot slot = it.next().getValue();
+			if (((slot.infoFlag & InfoEndpointDataSet.TRUSTED) != 0) && uniq.equals(slot.uniq)) {
+				it.remove();
+			}
+		}
+	}
+
+	int size() {
+		return slots.size();
+	}
+
+	/**
+	 * @return the number of lookups that used a prefetched response.
+	 */
+	long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that didn't find a prefetched response, or couldn't use it.
+	 */
+	long getMisses() {
+		return misses.sum();
+	}
+
+	private void purgeExpired() {
+		long now = System.nanoTime();
+		for (Iterator<Map.Entry<String, Slot>> it = slots.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue().isExpired(now)) {
+				it.remove();
+			}
+		}
+	}
+
+	private static class Slot {
+		final Future<String> response;
+		final int infoFlag;
+		final String uniq;
+		final long expiresAt;
+
+		Slot(Future<String> response, int infoFlag, String uniq, long expiresAt) {
+			this.response = response;
+			this.infoFlag = infoFlag;
+			this.uniq = uniq;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return (now - expiresAt) > 0;
+		}
+	}
+}
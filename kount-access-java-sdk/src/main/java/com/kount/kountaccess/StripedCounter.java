@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter updated by many threads on every call, read rarely (e.g. from JMX). Threads update one of several cells,
+ * each on its own cache line, so they don't all contend on a single atomic long (Java 7 has no LongAdder).
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class StripedCounter {
+
+	/**
+	 * Longs between two cells: 128 bytes, a cache line plus the adjacent line prefetched with it.
+	 */
+	private static final int PADDING = 16;
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	StripedCounter() {
+		int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+		this.cells = new AtomicLongArray(stripes * PADDING);
+		this.mask = stripes - 1;
+	}
+
+	void increment() {
+		add(1);
+	}
+
+	void decrement() {
+		add(-1);
+	}
+
+	void add(long delta) {
+		long id = Thread.currentThread().getId();
+		int stripe = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		cells.addAndGet(((stripe >>> 16) & mask) * PADDING, delta);
+	}
+
+	/**
+	 * @return the sum of the cells, not a snapshot: the updates made while it is computed may or may not be counted.
+	 */
+	long sum() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PADDING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+}
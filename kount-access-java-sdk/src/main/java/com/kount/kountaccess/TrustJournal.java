@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-mapped, append-only journal of the trust updates queued by {@link TrustWriteBehind}. Writes go to the page
+ * cache of the mapped file, so pending updates survive a restart of the process without paying for a disk sync on
+ * every update. The file is locked while the journal is open, so two SDK instances or processes can't resend the same
+ * updates.
+ * <p>
+ * The file has a header, holding the index of the active region, and two regions of records. Each record is a state
+ * byte ({@link #PENDING} or {@link #DONE}), the payload length and the UTF-8 payload. A zero state byte marks the end
+ * of the records. Once no record is pending any more, the active region starts over from its beginning. When it is
+ * full, the pending records are copied to the other region, which then becomes the active one with a single byte
+ * write, so a crash at any time leaves one complete region to recover from.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class TrustJournal {
+
+	/**
+	 * Default size of the journal file, two regions of 4MB.
+	 */
+	static final int DEFAULT_SIZE = 8 * 1024 * 1024;
+
+	private static final byte END = 0;
+	private static final byte PENDING = 1;
+	private static final byte DONE = 2;
+
+	private static final int HEADER_SIZE = 5;
+
+	/**
+	 * Size of the file header, the index of the active region
+	 */
+	private static final int FILE_HEADER_SIZE = 8;
+
+	private final RandomAccessFile file;
+
+	private final MappedByteBuffer buffer;
+
+	private final int regionSize;
+
+	/**
+	 * Start of the active region
+	 */
+	private int region;
+
+	private int writePosition;
+
+	private long nextId;
+
+	/**
+	 * Position of the pending records by id, in the order they were appended
+	 */
+	private final Map<Long, Integer> pending = new LinkedHashMap<>();
+
+	/**
+	 * A pending record read back from the journal.
+	 */
+	static class Record {
+		final long id;
+		final String payload;
+
+		Record(long id, String payload) {
+			this.id = id;
+			this.payload = payload;
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 *             Thrown if the file can't be mapped, or is locked by another journal.
+	 */
+	TrustJournal(File journal, int size) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(journal, "rw");
+		try {
+			lock(file.getChannel(), journal);
+			this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+		this.file = file;
+		this.regionSize = (size - FILE_HEADER_SIZE) / 2;
+		this.region = regionStart(buffer.get(0));
+		this.writePosition = region;
+	}
+
+	/**
+	 * Reads the records that were still pending when the journal was last used and positions the journal after them.
+	 *
+	 * @return the pending records in the order they were appended.
+	 */
+	synchronized List<Record> recover() {
+		List<Record> records = new ArrayList<>();
+		pending.clear();
+		region = regionStart(buffer.get(0));
+		int end = region + regionSize;
+		int position = region;
+		while ((position + HEADER_SIZE) <= end) {
+			byte state = buffer.get(position);
+			int length = buffer.getInt(position + 1);
+			if ((state == END) || (length < 0) || ((position + HEADER_SIZE + length) > end)) {
+				break;
+			}
+			if (state == PENDING) {
+				byte[] payload = new byte[length];
+				for (int i = 0; i < length; i++) {
+					payload[i] = buffer.get(position + HEADER_SIZE + i);
+				}
+				long id = nextId++;
+				pending.put(id, position);
+				records.add(new Record(id, new String(payload, StandardCharsets.UTF_8)));
+			}
+			position += HEADER_SIZE + length;
+		}
+		writePosition = position;
+		if (pending.isEmpty()) {
+			reset();
+		}
+		return records;
+	}
+
+	/**
+	 * Appends a pending record, moving the pending records to the other region first if the active one is full.
+	 *
+	 * @return the id of the record, or -1 if the pending records fill the journal.
+	 */
+	synchronized long append(String payload) {
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+		int length = HEADER_SIZE + bytes.length;
+		if ((writePosition + length) > (region + regionSize)) {
+			switchRegion();
+			if ((writePosition + length) > (region + regionSize)) {
+				return -1;
+			}
+		}
+		int position = writePosition;
+		int next = position + length;
+		// terminate the records first, so a partially written record is never read back
+		if (next < (region + regionSize)) {
+			buffer.put(next, END);
+		}
+		buffer.putInt(position + 1, bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			buffer.put(position + HEADER_SIZE + i, bytes[i]);
+		}
+		buffer.put(position, PENDING);
+		writePosition = next;
+		long id = nextId++;
+		pending.put(id, position);
+		return id;
+	}
+
+	/**
+	 * Marks a record as done.
+	 */
+	synchronized void complete(long id) {
+		Integer position = pending.remove(id);
+		if (position == null) {
+			return;
+		}
+		buffer.put(position, DONE);
+		if (pending.isEmpty()) {
+			reset();
+		}
+	}
+
+	synchronized int getPendingRecords() {
+		return pending.size();
+	}
+
+	/**
+	 * Flushes the journal to the disk and releases the file.
+	 */
+	synchronized void close() throws IOException {
+		buffer.force();
+		file.close();
+	}
+
+	/**
+	 * Copies the pending records to the other region, then makes it the active one.
+	 */
+	private void switchRegion() {
+		int other = (region == regionStart((byte) 0)) ? regionStart((byte) 1) : regionStart((byte) 0);
+		int position = other;
+		for (Map.Entry<Long, Integer> entry : pending.entrySet()) {
+			int from = entry.getValue();
+			int length = HEADER_SIZE + buffer.getInt(from + 1);
+			for (int i = 0; i < length; i++) {
+				buffer.put(position + i, buffer.get(from + i));
+			}
+			entry.setValue(position);
+			position += length;
+		}
+		if (position < (other + regionSize)) {
+			buffer.put(position, END);
+		}
+		buffer.put(0, (byte) ((other == regionStart((byte) 0)) ? 0 : 1));
+		region = other;
+		writePosition = position;
+	}
+
+	private int regionStart(byte index) {
+		return FILE_HEADER_SIZE + ((index == 1) ? regionSize : 0);
+	}
+
+	private void reset() {
+		buffer.put(region, END);
+		writePosition = region;
+	}
+
+	private static void lock(FileChannel channel, File journal) throws IOException {
+		FileLock lock;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// locked by another journal of this process
+			lock = null;
+		}
+		if (lock == null) {
+			throw new IOException("Trust journal " + journal + " is used by another SDK instance or process");
+		}
+	}
+}
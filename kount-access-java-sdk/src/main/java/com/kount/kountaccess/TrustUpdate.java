@@ -0,0 +1,88 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+/**
+ * A single trusted state update for {@link AccessSdk#setDeviceTrustBulk(java.util.Collection)}, either by device id
+ * or by session.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+public class TrustUpdate {
+
+	private final String deviceId;
+
+	private final String session;
+
+	private final String uniq;
+
+	private final String trustedState;
+
+	private TrustUpdate(String deviceId, String session, String uniq, String trustedState) {
+		this.deviceId = deviceId;
+		this.session = session;
+		this.uniq = uniq;
+		this.trustedState = trustedState;
+	}
+
+	/**
+	 * Update of the trusted state by device id (devicetrustbydevice endpoint).
+	 *
+	 * @param deviceId
+	 *            Device ID(fingerprint).
+	 * @param uniq
+	 *            customer IDs
+	 * @param trustedState
+	 *            trusted state (possible values: trusted, not_trusted and banned)
+	 * @return the update
+	 */
+	public static TrustUpdate byDevice(String deviceId, String uniq, String trustedState) {
+		return new TrustUpdate(deviceId, null, uniq, trustedState);
+	}
+
+	/**
+	 * Update of the trusted state by session (devicetrustbysession endpoint).
+	 *
+	 * @param session
+	 *            The Session ID generated for the Data Collector service.
+	 * @param uniq
+	 *            customer IDs
+	 * @param trustedState
+	 *            trusted state (possible values: trusted, not_trusted and banned)
+	 * @return the update
+	 */
+	public static TrustUpdate bySession(String session, String uniq, String trustedState) {
+		return new TrustUpdate(null, session, uniq, trustedState);
+	}
+
+	/**
+	 * @return true if the update is by session, false if it is by device id.
+	 */
+	public boolean isBySession() {
+		return session != null;
+	}
+
+	public String getDeviceId() {
+		return deviceId;
+	}
+
+	public String getSession() {
+		return session;
+	}
+
+	public String getUniq() {
+		return uniq;
+	}
+
+	public String getTrustedState() {
+		return trustedState;
+	}
+
+	@Override
+	public String toString() {
+		return (isBySession() ? "session=" + session : "deviceId=" + deviceId) + ", uniq=" + uniq + ", trustedState="
+				+ trustedState;
+	}
+}
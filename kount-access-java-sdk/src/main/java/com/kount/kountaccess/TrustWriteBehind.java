@@ -0,0 +1,338 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+
+/**
+ * Write-behind queue for the device trust updates. Updates are queued in bounded queues and sent by background
+ * workers, retrying network errors, 429 and 5xx responses with an exponential backoff. When a journal file is
+ * configured, every queued update is also recorded in a {@link TrustJournal}, and updates still pending when the
+ * process stopped are sent again on the next start.
+ * <p>
+ * Each worker has its own queue, and all the updates for the same (deviceId, uniq) or (session, uniq) key go to the
+ * same worker, so they are sent in the order they were submitted. If that queue is full, the caller waits for room
+ * rather than losing the update or reordering it.
+ * <p>
+ * Optionally, updates for the same key that are still queued are collapsed, so only the latest trusted state is sent.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class TrustWriteBehind {
+	private static final Logger logger = LogManager.getLogger(TrustWriteBehind.class);
+
+	/**
+	 * Default capacity of the queue.
+	 */
+	static final int DEFAULT_CAPACITY = 10000;
+
+	/**
+	 * Default number of background workers.
+	 */
+	static final int DEFAULT_WORKERS = 2;
+
+	/**
+	 * Default number of retries of a failed update.
+	 */
+	static final int DEFAULT_MAX_RETRIES = 5;
+
+	private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+	private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+	/**
+	 * Sends a trust update to the server.
+	 */
+	interface Sender {
+		void send(String endpoint, List<NameValuePair> parameters) throws AccessException;
+	}
+
+	private final Sender sender;
+
+	private final TrustJournal journal;
+
+	private final BlockingQueue<Update>[] queues;
+
+	private final int maxRetries;
+
+	/**
+	 * Latest queued update per key, when collapsing updates
+	 */
+	private final ConcurrentMap<String, Update> latest;
+
+	private final ExecutorService workers;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	private final Object idle = new Object();
+
+	/**
+	 * Creates the queues and starts the workers. Updates left pending in the journal are queued again.
+	 *
+	 * @param journalFile
+	 *            the journal file, or null if the queued updates don't have to survive a restart.
+	 * @param collapse
+	 *            whether still queued updates for the same key are replaced by the latest one.
+	 */
+	@SuppressWarnings("unchecked")
+	TrustWriteBehind(Sender sender, File journalFile, int capacity, int workerCount, int maxRetries, boolean collapse)
+			throws IOException {
+		this.sender = sender;
+		this.maxRetries = maxRetries;
+		this.latest = collapse ? new ConcurrentHashMap<String, Update>(16, 0.75f, workerCount) : null;
+		this.journal = (journalFile != null) ? new TrustJournal(journalFile, TrustJournal.DEFAULT_SIZE) : null;
+
+		this.queues = new BlockingQueue[workerCount];
+		this.workers = Executors.newFixedThreadPool(workerCount, new AccessThreadFactory("trust"));
+		for (int i = 0; i < workerCount; i++) {
+			final BlockingQueue<Update> queue = new ArrayBlockingQueue<>(Math.max(1, capacity / workerCount));
+			queues[i] = queue;
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					work(queue);
+				}
+			});
+		}
+
+		if (journal != null) {
+			List<TrustJournal.Record> pending = journal.recover();
+			if (!pending.isEmpty()) {
+				logger.info("resending {} trust updates from {}", pending.size(), journalFile);
+			}
+			for (TrustJournal.Record record : pending) {
+				int separator = record.payload.indexOf('\n');
+				List<NameValuePair> parameters = URLEncodedUtils.parse(record.payload.substring(separator + 1),
+						StandardCharsets.UTF_8);
+				try {
+					enqueue(new Update(record.payload.substring(0, separator), parameters, record.id));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while resending trust updates", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queues a trust update, waiting for room if the queue is full.
+	 *
+	 * @throws AccessException
+	 *             Thrown if interrupted while waiting for room in the queue.
+	 */
+	void submit(String endpoint, List<NameValuePair> parameters) throws AccessException {
+		long journalId = -1;
+		if (journal != null) {
+			journalId = journal.append(endpoint + '\n' + URLEncodedUtils.format(parameters, StandardCharsets.UTF_8));
+			if (journalId < 0) {
+				logger.warn("trust journal is full, update to {} is queued without being journaled", endpoint);
+			}
+		}
+		try {
+			enqueue(new Update(endpoint, parameters, journalId));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AccessException(AccessErrorType.INTERNAL_ERROR, "Interrupted while queueing trust update", e);
+		}
+	}
+
+	private void enqueue(Update update) throws InterruptedException {
+		outstanding.incrementAndGet();
+		BlockingQueue<Update> queue = queues[(update.key.hashCode() & Integer.MAX_VALUE) % queues.length];
+		if (latest == null) {
+			try {
+				queue.put(update);
+			} catch (InterruptedException e) {
+				done(update);
+				throw e;
+			}
+			return;
+		}
+
+		// the queue is the stripe lock for its keys, so the latest update always is the last one queued
+		synchronized (queue) {
+			try {
+				queue.put(update);
+			} catch (InterruptedException e) {
+				done(update);
+				throw e;
+			}
+			Update previous = latest.put(update.key, update);
+			if (previous != null) {
+				previous.superseded = true;
+			}
+			if (update.taken) {
+				// the worker was faster, don't leave a stale entry behind
+				latest.remove(update.key, update);
+			}
+		}
+	}
+
+	/**
+	 * Waits until all the queued updates are sent or given up on.
+	 *
+	 * @return true if the queue is empty, false if the timeout elapsed first.
+	 */
+	boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (idle) {
+			while (outstanding.get() > 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of updates queued or being sent.
+	 */
+	int getPendingCount() {
+		return outstanding.get();
+	}
+
+	/**
+	 * Stops the workers and closes the journal, once flushed or when giving up on the updates still queued: they stay
+	 * in the journal, if any, and are sent on the next start.
+	 */
+	void close() {
+		workers.shutdownNow();
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				logger.warn("Unable to close the trust journal", e);
+			}
+		}
+	}
+
+	private void work(BlockingQueue<Update> queue) {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Update update = queue.take();
+				boolean interrupted = false;
+				try {
+					if (latest != null) {
+						update.taken = true;
+						latest.remove(update.key, update);
+					}
+					if (update.superseded) {
+						logger.debug("trust update to {} superseded by a later update", update.endpoint);
+					} else {
+						send(update);
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+					throw e;
+				} finally {
+					// an update interrupted by the close is left in the journal
+					if (!interrupted) {
+						done(update);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// shutting down
+		}
+	}
+
+	private void send(Update update) throws InterruptedException {
+		long backoff = INITIAL_BACKOFF_MILLIS;
+		for (int attempt = 0;; attempt++) {
+			try {
+				sender.send(update.endpoint, update.parameters);
+				return;
+			} catch (AccessException e) {
+				if (e.getAccessErrorType() == AccessErrorType.REJECTED) {
+					throw new InterruptedException("Access SDK closed");
+				}
+				if (!isRetryable(e) || (attempt >= maxRetries)) {
+					logger.error("giving up trust update to {} after {} attempt(s)", update.endpoint, attempt + 1, e);
+					return;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("trust update to {} failed, retrying in {}ms: {}", update.endpoint, backoff,
+							e.getMessage());
+				}
+				Thread.sleep(backoff);
+				backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the update may go through later: no response at all, or the server is overloaded (429 or 5xx).
+	 *         Another status, e.g. a 400 for invalid parameters, would fail again the same way.
+	 */
+	private static boolean isRetryable(AccessException e) {
+		if (e.getAccessErrorType() != AccessErrorType.NETWORK_ERROR) {
+			return false;
+		}
+		int status = (e.getCall() != null) ? e.getCall().getStatusCode() : 0;
+		return (status == 0) || (status == 429) || (status >= 500);
+	}
+
+	private void done(Update update) {
+		if (journal != null) {
+			journal.complete(update.journalId);
+		}
+		if (outstanding.decrementAndGet() == 0) {
+			synchronized (idle) {
+				idle.notifyAll();
+			}
+		}
+	}
+
+	private static class Update {
+		final String endpoint;
+		final List<NameValuePair> parameters;
+		final long journalId;
+		final String key;
+		volatile boolean superseded;
+		volatile boolean taken;
+
+		Update(String endpoint, List<NameValuePair> parameters, long journalId) {
+			this.endpoint = endpoint;
+			this.parameters = parameters;
+			this.journalId = journalId;
+			this.key = keyOf(endpoint, parameters);
+		}
+
+		/**
+		 * The (deviceId, uniq) or (session, uniq) the update sets the trusted state for.
+		 */
+		private static String keyOf(String endpoint, List<NameValuePair> parameters) {
+			StringBuilder key = new StringBuilder(endpoint);
+			for (NameValuePair parameter : parameters) {
+				String name = parameter.getName();
+				if ("d".equals(name) || "s".equals(name) || "uniq".equals(name)) {
+					key.append('\u0000').append(name).append('=').append(parameter.getValue());
+				}
+			}
+			return key.toString();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the SDK, for Java 11 and later. The events are only allocated and filled while a
+ * recording has them enabled.
+ *
+ * @author custserv@kount.com
+ * @version 4.0.0
+ */
+class AccessFlightRecorder {
+
+	private AccessFlightRecorder() {
+	}
+
+	static Object beginCall() {
+		CallEvent event = new CallEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void commitCall(Object event, AccessCall call) {
+		if (event == null) {
+			return;
+		}
+		CallEvent callEvent = (CallEvent) event;
+		callEvent.end();
+		if (callEvent.shouldCommit()) {
+			callEvent.endpoint = call.getEndpoint().getName();
+			callEvent.merchantId = call.getMerchantId();
+			callEvent.statusCode = call.getStatusCode();
+			callEvent.errorType = (call.getErrorType() != null) ? call.getErrorType().name() : null;
+			callEvent.bytesSent = call.getBytesSent();
+			callEvent.bytesReceived = call.getBytesReceived();
+			callEvent.retries = call.getRetries();
+			callEvent.responseId = call.getResponseId();
+			callEvent.commit();
+		}
+	}
+
+	static Object beginPoolLease() {
+		PoolLeaseEvent event = new PoolLeaseEvent();
+		if (!event.isEnabled()) {
+			return null;
+		}
+		event.begin();
+		return event;
+	}
+
+	static void commitPoolLease(Object event, String route, boolean leased) {
+		if (event == null) {
+			return;
+		}
+		PoolLeaseEvent leaseEvent = (PoolLeaseEvent) event;
+		leaseEvent.end();
+		if (leaseEvent.shouldCommit()) {
+			leaseEvent.route = route;
+			leaseEvent.leased = leased;
+			leaseEvent.commit();
+		}
+	}
+
+	static void prefetchLookup(int infoFlag, boolean hit) {
+		PrefetchLookupEvent event = new PrefetchLookupEvent();
+		if (event.shouldCommit()) {
+			event.dataSets = infoFlag;
+			event.hit = hit;
+			event.commit();
+		}
+	}
+
+	@Name("com.kount.access.Call")
+	@Label("Kount Access Call")
+	@Category("Kount Access")
+	@Description("A call to the Kount Access API")
+	static class CallEvent extends Event {
+		@Label("Endpoint")
+		String endpoint;
+
+		@Label("Merchant ID")
+		int merchantId;
+
+		@Label("Status Code")
+		@Description("HTTP status of the response, 0 if none was received")
+		int statusCode;
+
+		@Label("Error Type")
+		String errorType;
+
+		@Label("Bytes Sent")
+		@DataAmount
+		long bytesSent;
+
+		@Label("Bytes Received")
+		@DataAmount
+		long bytesReceived;
+
+		@Label("Retries")
+		int retries;
+
+		@Label("Response ID")
+		String responseId;
+	}
+
+	@Name("com.kount.access.PoolLease")
+	@Label("Kount Access Pool Lease")
+	@Category("Kount Access")
+	@Description("Wait for a pooled connection to the Kount Access host")
+	static class PoolLeaseEvent extends Event {
+		@Label("Route")
+		String route;
+
+		@Label("Leased")
+		@Description("false if the wait timed out or was interrupted")
+		boolean leased;
+	}
+
+	@Name("com.kount.access.PrefetchLookup")
+	@Label("Kount Access Prefetch Lookup")
+	@Category("Kount Access")
+	@Description("Lookup of a prefetched info response")
+	static class PrefetchLookupEvent extends Event {
+		@Label("Data Sets")
+		@Description("Info endpoint data sets requested")
+		int dataSets;
+
+		@Label("Hit")
+		boolean hit;
+	}
+}
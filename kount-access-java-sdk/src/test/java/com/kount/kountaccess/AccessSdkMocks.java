@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Mocks shared by the tests sending their calls through a mocked HTTP client.
+ *
+ * @author custserv@kount.com
+ */
+final class AccessSdkMocks {
+
+	/**
+	 * Runs before the mocked HTTP client answers a request, e.g. to hold it, record it or fail it.
+	 */
+	interface RequestHook {
+		void beforeResponse(HttpUriRequest request) throws Exception;
+	}
+
+	private AccessSdkMocks() {
+	}
+
+	/**
+	 * @return a spy of the SDK sending its calls through the HTTP client.
+	 */
+	static AccessSdk mockSdk(AccessSdk sdk, CloseableHttpClient mockHttpClient) {
+		AccessSdk spy = spy(sdk);
+		doReturn(mockHttpClient).when(spy).getHttpClient();
+		return spy;
+	}
+
+	/**
+	 * @return an HTTP client answering every request with a 200 and the body.
+	 */
+	static CloseableHttpClient mockHttpClient(String body) throws IOException {
+		return mockHttpClient(body, null);
+	}
+
+	/**
+	 * @return an HTTP client counting entered down when a request reaches it, then answering it with a 200 and the
+	 *         body once released. Either latch may be null.
+	 */
+	static CloseableHttpClient mockHttpClient(String body, final CountDownLatch entered, final CountDownLatch release)
+			throws IOException {
+		return mockHttpClient(body, new RequestHook() {
+			@Override
+			public void beforeResponse(HttpUriRequest request) throws InterruptedException {
+				if (entered != null) {
+					entered.countDown();
+				}
+				if (release != null) {
+					release.await();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return an HTTP client answering every request with a 200 and the body, after the hook if any.
+	 */
+	static CloseableHttpClient mockHttpClient(final String body, final RequestHook hook) throws IOException {
+		CloseableHttpClient mockHttpClient = mock(CloseableHttpClient.class);
+		when(mockHttpClient.execute(any(HttpUriRequest.class))).thenAnswer(new Answer<CloseableHttpResponse>() {
+			@Override
+			public CloseableHttpResponse answer(InvocationOnMock invocation) throws Throwable {
+				if (hook != null) {
+					hook.beforeResponse((HttpUriRequest) invocation.getArguments()[0]);
+				}
+				return mockHttpResponse(body, 200);
+			}
+		});
+		return mockHttpClient;
+	}
+
+	/**
+	 * @return a response with that status and body, read like a real one.
+	 */
+	static CloseableHttpResponse mockHttpResponse(String body, int statusCode) throws IOException {
+		CloseableHttpResponse mockResponse = mock(CloseableHttpResponse.class);
+		StatusLine mockStatus = mock(StatusLine.class);
+		doReturn(new StringEntity(body)).when(mockResponse).getEntity();
+		doReturn(mockStatus).when(mockResponse).getStatusLine();
+		doReturn(statusCode).when(mockStatus).getStatusCode();
+		return mockResponse;
+	}
+
+	/**
+	 * @return a response of the SDK spy with that status and body.
+	 */
+	static CloseableHttpResponse mockResponse(AccessSdk sdk, String body, int statusCode) throws AccessException {
+		CloseableHttpResponse mockResponse = mock(CloseableHttpResponse.class);
+		StatusLine mockStatus = mock(StatusLine.class);
+		doReturn(body).when(sdk).getResponseAsString(mockResponse);
+		doReturn(mockStatus).when(mockResponse).getStatusLine();
+		doReturn(statusCode).when(mockStatus).getStatusCode();
+		return mockResponse;
+	}
+}
@@ -0,0 +1,185 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit Tests around the cache of the addresses of the Access hosts.
+ *
+ * @author custserv@kount.com
+ */
+public class CachingDnsResolverTest {
+
+	String host = "999999.kountaccess.com";
+
+	CountingResolver lookups = new CountingResolver();
+
+	CachingDnsResolver resolver;
+
+	@After
+	public void closeResolver() {
+		if (resolver != null) {
+			resolver.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.CachingDnsResolver#resolve(String)}: the addresses are looked up
+	 * once while they are fresh.
+	 */
+	@Test
+	public void testCached() throws Exception {
+		resolver = new CachingDnsResolver(lookups, 60000, 0);
+
+		InetAddress[] first = resolver.resolve(host);
+		first[0] = null;
+		InetAddress[] second = resolver.resolve(host);
+
+		assertEquals(1, lookups.count.get());
+		assertEquals("10.0.0.1", second[0].getHostAddress());
+		assertEquals(1, resolver.size());
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.CachingDnsResolver#resolve(String)}: the addresses are looked up
+	 * again in the background before they expire, without any call waiting for it.
+	 */
+	@Test
+	public void testRefreshAhead() throws Exception {
+		resolver = new CachingDnsResolver(lookups, 200, 0);
+		assertEquals("10.0.0.1", resolver.resolve(host)[0].getHostAddress());
+
+		awaitLookups(3);
+
+		// the addresses of the last refresh, found less than the time to live ago
+		assertTrue(resolver.resolve(host)[0].getHostAddress().startsWith("10.0.0."));
+		assertTrue(lookups.count.get() <= 4);
+		assertTrue(lookups.count.get() >= 3);
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.CachingDnsResolver#resolve(String)}: the last addresses found are
+	 * used while the lookups fail, up to the maximum stale time.
+	 */
+	@Test
+	public void testStaleOnFailure() throws Exception {
+		resolver = new CachingDnsResolver(lookups, 100, 300);
+		resolver.resolve(host);
+		lookups.failing = true;
+
+		Thread.sleep(200);
+		assertEquals("10.0.0.1", resolver.resolve(host)[0].getHostAddress());
+
+		Thread.sleep(400);
+		try {
+			resolver.resolve(host);
+			fail("Exception Not thrown");
+		} catch (UnknownHostException e) {
+			assertEquals(host, e.getMessage());
+		}
+
+		// the lookups are retried in the background until the DNS comes back
+		lookups.failing = false;
+		int failed = lookups.count.get();
+		awaitLookups(failed + 1);
+		assertTrue(resolver.resolve(host)[0].getHostAddress().startsWith("10.0.0."));
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.CachingDnsResolver#close()}: no lookup after it.
+	 */
+	@Test
+	public void testClose() throws Exception {
+		resolver = new CachingDnsResolver(lookups, 50, 0);
+		resolver.resolve(host);
+
+		resolver.close();
+		Thread.sleep(150);
+
+		assertEquals(1, lookups.count.get());
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.CachingDnsResolver#resolve(String)}: the refresh of a host stops
+	 * once it isn't resolved anymore.
+	 */
+	@Test
+	public void testRefreshStopsWhenIdle() throws Exception {
+		resolver = new CachingDnsResolver(lookups, 100, 0);
+		resolver.resolve(host);
+
+		Thread.sleep(CachingDnsResolver.IDLE_TTLS * 100 + 200);
+		int refreshed = lookups.count.get();
+		Thread.sleep(300);
+
+		assertEquals(refreshed, lookups.count.get());
+		assertTrue(String.valueOf(refreshed), refreshed <= 4);
+		// looked up again on the calling thread once expired
+		resolver.resolve(host);
+		assertEquals(refreshed + 1, lookups.count.get());
+	}
+
+	/**
+	 * SDK instances that are never closed share the refresher thread of their DNS caches.
+	 */
+	@Test
+	public void testUnclosedInstancesShareThread() throws Exception {
+		for (int i = 0; i < 30; i++) {
+			AccessSdk sdk = AccessSdk.builder().host("localhost:1").merchantId(999999).apiKey("dns-test-api-key")
+					.connectTimeout(200).dnsCache(100, 0).build();
+			try {
+				sdk.getDevice("askhjdaskdgjhagkjhasg47862345shg");
+			} catch (AccessException e) {
+				// nothing listens there, the host was resolved all the same
+			}
+		}
+
+		int threads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().startsWith("kount-access-dns-")) {
+				threads++;
+			}
+		}
+		assertTrue(String.valueOf(threads), threads <= 1);
+	}
+
+	private void awaitLookups(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (lookups.count.get() < count) {
+			if (System.currentTimeMillis() > deadline) {
+				fail("Not looked up: " + lookups.count.get());
+			}
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Resolves to a new address on every lookup, or fails.
+	 */
+	private static class CountingResolver implements DnsResolver {
+		final AtomicInteger count = new AtomicInteger();
+
+		volatile boolean failing;
+
+		@Override
+		public InetAddress[] resolve(String host) throws UnknownHostException {
+			int lookup = count.incrementAndGet();
+			if (failing) {
+				throw new UnknownHostException(host);
+			}
+			return new InetAddress[] { InetAddress.getByAddress(host, new byte[] { 10, 0, 0, (byte) lookup }) };
+		}
+	}
+}
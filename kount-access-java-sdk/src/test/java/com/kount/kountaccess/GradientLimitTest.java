@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.kount.kountaccess.AccessException.AccessErrorType;
+import com.kount.kountaccess.CallOptions.Priority;
+
+/**
+ * Unit Tests around the adaptive concurrency limit of the dispatch queue.
+ *
+ * @author custserv@kount.com
+ */
+public class GradientLimitTest {
+
+	long rtt = TimeUnit.MILLISECONDS.toNanos(20);
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.GradientLimit#onSample(long, int, boolean)}: the limit grows up to
+	 * the maximum while the RTT is steady and the limit is used.
+	 */
+	@Test
+	public void testGrowsWhileSteady() {
+		GradientLimit limit = new GradientLimit(2, 100, 10);
+
+		for (int i = 0; i < 500; i++) {
+			limit.onSample(rtt, limit.getLimit(), false);
+		}
+
+		assertEquals(100, limit.getLimit());
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.GradientLimit#onSample(long, int, boolean)}: the limit doesn't
+	 * grow while most of it is unused.
+	 */
+	@Test
+	public void testNoGrowthWhenUnused() {
+		GradientLimit limit = new GradientLimit(2, 100, 20);
+
+		for (int i = 0; i < 500; i++) {
+			limit.onSample(rtt, 5, false);
+		}
+
+		assertEquals(20, limit.getLimit());
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.GradientLimit#onSample(long, int, boolean)}: the limit shrinks when
+	 * the RTT goes up, and grows again once it is back to normal.
+	 */
+	@Test
+	public void testBrownout() {
+		GradientLimit limit = new GradientLimit(2, 100, 50);
+		for (int i = 0; i < 1000; i++) {
+			limit.onSample(rtt, limit.getLimit(), false);
+		}
+		int before = limit.getLimit();
+
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(rtt * 5, limit.getLimit(), false);
+		}
+		int during = limit.getLimit();
+		assertTrue(before + " -> " + during, during < (before / 2));
+
+		for (int i = 0; i < 1000; i++) {
+			limit.onSample(rtt, limit.getLimit(), false);
+		}
+		assertTrue(during + " -> " + limit.getLimit(), limit.getLimit() > during);
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.GradientLimit#onSample(long, int, boolean)}: dropped requests back
+	 * the limit off, down to the minimum.
+	 */
+	@Test
+	public void testBackoff() {
+		GradientLimit limit = new GradientLimit(5, 100, 100);
+
+		assertEquals(90, limit.onSample(rtt, 100, true));
+		for (int i = 0; i < 100; i++) {
+			limit.onSample(rtt, 100, true);
+		}
+
+		assertEquals(5, limit.getLimit());
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.FairScheduler#release(long, boolean)}: the scheduler follows the
+	 * limit, and sheds the requests beyond the ones it can queue.
+	 */
+	@Test
+	public void testScheduler() throws Exception {
+		final FairScheduler scheduler = new FairScheduler(0, null, new GradientLimit(1, 4, 2));
+		assertEquals(2, scheduler.getMaxInFlight());
+		scheduler.acquire(Priority.INTERACTIVE, "a", 0);
+		scheduler.acquire(Priority.INTERACTIVE, "a", 0);
+
+		scheduler.release(rtt, true);
+
+		assertEquals(1, scheduler.getMaxInFlight());
+		assertEquals(1, scheduler.getInFlight());
+		Thread waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					scheduler.acquire(Priority.INTERACTIVE, "a", 0);
+				} catch (AccessException e) {
+					// left waiting
+				}
+			}
+		});
+		waiter.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (scheduler.getWaiting() < 1) {
+			assertTrue("Request not queued", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		// as many waiting as the limit allows in flight
+		try {
+			scheduler.acquire(Priority.INTERACTIVE, "b", 0);
+			fail("Exception Not thrown");
+		} catch (AccessException ae) {
+			assertEquals(AccessErrorType.REJECTED, ae.getAccessErrorType());
+		}
+
+		scheduler.release(rtt, false);
+		waiter.join(5000);
+
+		assertEquals(0, scheduler.getWaiting());
+		assertEquals(1, scheduler.getInFlight());
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.Test;
+
+/**
+ * Unit Tests around the redaction and sampling of the debug logs.
+ *
+ * @author custserv@kount.com
+ */
+public class LogRedactionTest {
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.LogRedaction#parameters(List)}.
+	 */
+	@Test
+	public void testParametersRedacted() {
+		List<NameValuePair> parameters = new ArrayList<>();
+		parameters.add(new BasicNameValuePair("s", "session1"));
+		parameters.add(new BasicNameValuePair("uh", "userHash"));
+		parameters.add(new BasicNameValuePair("ph", "passwordHash"));
+		parameters.add(new BasicNameValuePair("ah", "authorizationHash"));
+
+		String logged = LogRedaction.parameters(parameters);
+
+		assertEquals("[s=session1, uh=<redacted>, ph=<redacted>, ah=<redacted>]", logged);
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.LogRedaction#url(String)}.
+	 */
+	@Test
+	public void testUrlRedacted() {
+		assertEquals("https://host/api/info?v=0400&s=session1&uh=<redacted>&i=31",
+				LogRedaction.url("https://host/api/info?v=0400&s=session1&uh=userHash&i=31"));
+		assertEquals("https://host/api/device?ah=<redacted>",
+				LogRedaction.url("https://host/api/device?ah=authorizationHash"));
+		assertEquals("https://host/api/device", LogRedaction.url("https://host/api/device"));
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.LogRedaction#samplePayload()}.
+	 */
+	@Test
+	public void testSamplePayload() {
+		int sampled = 0;
+		for (int i = 0; i < LogRedaction.DEFAULT_PAYLOAD_SAMPLING * 3; i++) {
+			if (LogRedaction.samplePayload()) {
+				sampled++;
+			}
+		}
+		assertEquals(3, sampled);
+		assertFalse(LogRedaction.url("https://host?ph=secret").contains("secret"));
+		assertTrue(LogRedaction.url("https://host?ph=secret").endsWith(LogRedaction.REDACTED));
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit Tests around the timing of the phases of a call in the HTTP client, against a local server.
+ *
+ * @author custserv@kount.com
+ */
+public class PhaseTimingTest {
+
+	private HttpServer server;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/api/device", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = "{\"device\":{}}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.start();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	/**
+	 * A new connection goes through the lease, DNS, connect and server phases; a kept-alive one skips DNS and connect.
+	 */
+	@Test
+	public void testPhasesTimed() throws IOException {
+		PoolingHttpClientConnectionManager connectionManager = PhaseTiming.connectionManager(null,
+				SystemDefaultDnsResolver.INSTANCE);
+		try (CloseableHttpClient client = HttpClients.custom().setConnectionManager(connectionManager)
+				.setRequestExecutor(PhaseTiming.requestExecutor()).build()) {
+			String url = "http://localhost:" + server.getAddress().getPort() + "/api/device";
+
+			AccessCall first = execute(client, url);
+			assertTrue(first.getPhaseNanos(AccessPhase.POOL_LEASE) > 0);
+			assertTrue(first.getPhaseNanos(AccessPhase.DNS) > 0);
+			assertTrue(first.getPhaseNanos(AccessPhase.CONNECT) > 0);
+			assertTrue(first.getPhaseNanos(AccessPhase.SERVER) > 0);
+			assertEquals(0, first.getPhaseNanos(AccessPhase.TLS));
+			assertEquals(0, first.getRetries());
+
+			AccessCall second = execute(client, url);
+			assertTrue(second.getPhaseNanos(AccessPhase.SERVER) > 0);
+			assertEquals(0, second.getPhaseNanos(AccessPhase.DNS));
+			assertEquals(0, second.getPhaseNanos(AccessPhase.CONNECT));
+		}
+	}
+
+	private AccessCall execute(CloseableHttpClient client, String url) throws IOException {
+		AccessCall call = new AccessCall(AccessEndpoint.DEVICE, 999999);
+		AccessCall.setCurrent(call);
+		try (CloseableHttpResponse response = client.execute(new HttpGet(url))) {
+			EntityUtils.consume(response.getEntity());
+		} finally {
+			AccessCall.setCurrent(null);
+		}
+		return call;
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package com.kount.kountaccess;
+
+import static junit.framework.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests around the counter shared by the calling threads.
+ *
+ * @author custserv@kount.com
+ */
+public class StripedCounterTest {
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.StripedCounter#increment()} from many threads.
+	 */
+	@Test
+	public void testConcurrentIncrements() throws InterruptedException {
+		final StripedCounter counter = new StripedCounter();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10000; j++) {
+						counter.increment();
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(160000, counter.sum());
+	}
+
+	/**
+	 * Test method for {@link com.kount.kountaccess.StripedCounter#add(long)} and
+	 * {@link com.kount.kountaccess.StripedCounter#decrement()}.
+	 */
+	@Test
+	public void testAddAndDecrement() {
+		StripedCounter counter = new StripedCounter();
+		counter.add(1500);
+		counter.increment();
+		counter.decrement();
+		counter.decrement();
+
+		assertEquals(1499, counter.sum());
+	}
+}